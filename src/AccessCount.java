@@ -0,0 +1,35 @@
+/**
+ * What adaptive mode knows about a node that has been read since the mode was turned on: its
+ * height before we started raising it, and its read count. SkipList keeps these in a side table,
+ * so that lists that aren't adaptive don't pay for them in every node.
+ */
+class AccessCount {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The height of the node when it was first read. (Adaptive mode never lowers it below that.)
+   */
+  int baseHeight;
+
+  /**
+   * The number of reads of the node, as of the given epoch.
+   */
+  int hits;
+  int epoch;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start counting the reads of a node of the given height, in the given epoch.
+   */
+  AccessCount(int baseHeight, int epoch) {
+    this.baseHeight = baseHeight;
+    this.epoch = epoch;
+  } // AccessCount(int, int)
+
+} // class AccessCount
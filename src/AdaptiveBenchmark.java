@@ -0,0 +1,94 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+// Compare search paths in static and adaptive SkipLists under a Zipf(0.99) read workload.
+public class AdaptiveBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in the list.
+   */
+  static final int SIZE = 100000;
+
+  /*
+   * The number of reads we warm up with, and then the number we measure.
+   */
+  static final int READS = 1000000;
+
+  /*
+   * The Zipf exponent.
+   */
+  static final double THETA = 0.99;
+
+  /*
+   * The number of most popular keys we count as "hot".
+   */
+  static final int HOT = 100;
+
+  static Random random = new Random(42);
+
+  public static void main(String[] args) {
+    // cdf[r] is the probability of picking one of the keys of rank 0 .. r.
+    double[] cdf = new double[SIZE];
+    double total = 0;
+    for (int r = 0; r < SIZE; r++) {
+      total += 1 / Math.pow(r + 1, THETA);
+      cdf[r] = total;
+    }
+    for (int r = 0; r < SIZE; r++) {
+      cdf[r] /= total;
+    }
+
+    // spread the popular keys all over the key space
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int i = 0; i < SIZE; i++) {
+      keys.add(i);
+    }
+    Collections.shuffle(keys, random);
+
+    pen.println("Size = " + SIZE + ", log2(size) = " + Math.round(Math.log(SIZE) / Math.log(2)));
+    run("static", false, cdf, keys);
+    run("adaptive", true, cdf, keys);
+  }
+
+  /*
+   * warm up a list, then print the average operation count of a read, overall and for hot keys
+   */
+  static void run(String name, boolean adaptive, double[] cdf, ArrayList<Integer> keys) {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    for (int i = 0; i < SIZE; i++) {
+      list.set(i, "hello");
+    }
+    list.setAdaptive(adaptive);
+    for (int i = 0; i < READS; i++) {
+      list.get(keys.get(rank(cdf)));
+    }
+
+    long allOps = 0;
+    long hotOps = 0;
+    long hotReads = 0;
+    for (int i = 0; i < READS; i++) {
+      int rank = rank(cdf);
+      SkipList.operationCount = 0;
+      list.get(keys.get(rank));
+      allOps += SkipList.operationCount;
+      if (rank < HOT) {
+        hotOps += SkipList.operationCount;
+        hotReads++;
+      }
+    }
+    pen.println(name + ": average get counter = " + allOps / READS + ", for the " + HOT
+        + " hottest keys = " + hotOps / Math.max(hotReads, 1) + ", height = " + list.height);
+  }
+
+  /*
+   * pick a rank from the Zipf distribution
+   */
+  static int rank(double[] cdf) {
+    int pos = Arrays.binarySearch(cdf, random.nextDouble());
+    return Math.min((pos >= 0) ? pos : -pos - 1, cdf.length - 1);
+  }
+}
@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * A skip list that can combine the values of any range of keys in expected O(log n) time. Each
+ * value is turned into an aggregate (with lift), and aggregates are combined with an associative
+ * operation that has an identity (a monoid), such as sum, min, max or count. Every link of the
+ * list remembers the combination of the nodes it skips over, so a range is covered by a few
+ * links rather than a walk over all of its nodes.
+ * 
+ * The operation need not be commutative (aggregates are always combined in key order), nor have
+ * an inverse, so min and max work as well as sums.
+ */
+public class AggregateSkipList<K, V, A> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The maximum height of a node.
+   */
+  static final int MAX_HEIGHT = 16;
+
+  /**
+   * The probability used to determine the height of nodes.
+   */
+  static final double PROB = 0.5;
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  static Random rand = new Random();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The node before the first node.
+   */
+  ASLNode<K, V, A> dummy = new ASLNode<K, V, A>(null, null, MAX_HEIGHT);
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The height of the tallest node.
+   */
+  int height;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  Comparator<K> comparator;
+
+  /**
+   * Turns a value into an aggregate.
+   */
+  Function<? super V, A> lift;
+
+  /**
+   * The aggregate of no values.
+   */
+  A identity;
+
+  /**
+   * Combines two aggregates (of adjacent runs of values, the earlier one first).
+   */
+  BinaryOperator<A> combine;
+
+  /**
+   * The predecessors found by the last call to find.
+   */
+  ASLNode<K, V, A>[] update = newNodeArray(MAX_HEIGHT);
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new list that aggregates lift(value) with combine, whose identity is identity.
+   */
+  public AggregateSkipList(Comparator<K> comparator, Function<? super V, A> lift, A identity,
+      BinaryOperator<A> combine) {
+    this.comparator = comparator;
+    this.lift = lift;
+    this.identity = identity;
+    this.combine = combine;
+  } // AggregateSkipList(Comparator<K>, Function<V, A>, A, BinaryOperator<A>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    ASLNode<K, V, A> found = find(key);
+    if (found != null) {
+      V old = found.value;
+      found.value = value;
+      refresh(this.height, null);
+      return old;
+    }
+
+    int h = randomHeight();
+    for (int i = this.height; i < h; i++) {
+      this.update[i] = this.dummy;
+    } // for
+    this.height = Math.max(this.height, h);
+    ASLNode<K, V, A> newNode = new ASLNode<K, V, A>(key, value, h);
+    for (int i = 0; i < h; i++) {
+      newNode.next[i] = this.update[i].next[i];
+      this.update[i].next[i] = newNode;
+    } // for
+    this.size++;
+    refresh(this.height, newNode);
+    return null;
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    ASLNode<K, V, A> found = find(key);
+    clearUpdate();
+    if (found == null) {
+      throw new IndexOutOfBoundsException("The key was not found.");
+    }
+    return found.value;
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    if (key == null) {
+      return false;
+    }
+    ASLNode<K, V, A> found = find(key);
+    clearUpdate();
+    return found != null;
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    ASLNode<K, V, A> found = find(key);
+    if (found == null) {
+      clearUpdate();
+      return null;
+    }
+    for (int i = 0; i < found.next.length; i++) {
+      this.update[i].next[i] = found.next[i];
+    } // for
+    while (this.height > 0 && this.dummy.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size--;
+    refresh(this.height, null);
+    return found.value;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new Iterator<K>() {
+      ASLNode<K, V, A> next = AggregateSkipList.this.dummy.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public K next() {
+        if (this.next == null) {
+          throw new IllegalStateException();
+        }
+        K key = this.next.key;
+        this.next = this.next.next[0];
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      ASLNode<K, V, A> next = AggregateSkipList.this.dummy.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == null) {
+          throw new IllegalStateException();
+        }
+        V value = this.next.value;
+        this.next = this.next.next[0];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (ASLNode<K, V, A> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+      action.accept(node.key, node.value);
+    } // for
+  } // forEach(BiConsumer)
+
+  // +-------------------+-------------------------------------------
+  // | Aggregate methods |
+  // +-------------------+
+
+  /**
+   * Combine the values of every key.
+   */
+  public A aggregate() {
+    A result = this.identity;
+    ASLNode<K, V, A> node = this.dummy;
+    for (int level = this.height - 1; level >= 0; level--) {
+      while (node.next[level] != null) {
+        result = this.combine.apply(result, node.aggregates[level]);
+        node = node.next[level];
+      } // while
+    } // for
+    return result;
+  } // aggregate()
+
+  /**
+   * Combine the values of the keys from from to to (both included), in expected O(log n) time.
+   * 
+   * @throws NullPointerException if either key is null.
+   */
+  public A aggregate(K from, K to) {
+    if (from == null || to == null) {
+      throw new NullPointerException("null key");
+    }
+    A result = this.identity;
+    if (this.comparator.compare(from, to) > 0) {
+      return result;
+    }
+
+    // find the last node before from
+    ASLNode<K, V, A> node = this.dummy;
+    for (int level = this.height - 1; level >= 0; level--) {
+      while (node.next[level] != null && this.comparator.compare(node.next[level].key, from) < 0) {
+        node = node.next[level];
+      } // while
+    } // for
+
+    // climb: keep taking the top link of the current node while it stays within the range, which
+    // takes us to taller and taller nodes
+    int level = Math.min(node.next.length, this.height) - 1;
+    while (level >= 0 && within(node.next[level], to)) {
+      result = this.combine.apply(result, node.aggregates[level]);
+      node = node.next[level];
+      level = Math.min(node.next.length, this.height) - 1;
+    } // while
+
+    // descend: take the longest links that stay within the range
+    for (level--; level >= 0; level--) {
+      while (within(node.next[level], to)) {
+        result = this.combine.apply(result, node.aggregates[level]);
+        node = node.next[level];
+      } // while
+    } // for
+    return result;
+  } // aggregate(K, K)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the node with the given key (or null), filling in update.
+   * 
+   * @throws NullPointerException if the key is null.
+   */
+  ASLNode<K, V, A> find(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    }
+    ASLNode<K, V, A> temp = this.dummy;
+    for (int level = this.height - 1; level >= 0; level--) {
+      while (temp.next[level] != null && this.comparator.compare(temp.next[level].key, key) < 0) {
+        temp = temp.next[level];
+      } // while
+      this.update[level] = temp;
+    } // for
+    ASLNode<K, V, A> next = temp.next[0];
+    return (next != null && this.comparator.compare(next.key, key) == 0) ? next : null;
+  } // find(K)
+
+  /**
+   * Recompute the aggregates of the links that a change just below update[0] may have touched:
+   * the links from update[i] on each of the first levels levels, and those from the new node (if
+   * any). Lower levels go first, since each link is rebuilt from the links below it.
+   */
+  void refresh(int levels, ASLNode<K, V, A> newNode) {
+    for (int i = 0; i < levels; i++) {
+      recompute(this.update[i], i);
+      if (newNode != null && i < newNode.next.length) {
+        recompute(newNode, i);
+      } // if
+    } // for
+    clearUpdate();
+  } // refresh(int, ASLNode<K, V, A>)
+
+  /**
+   * Recompute the aggregate of the link from node on the given level, which covers the nodes
+   * after node up to and including node.next[level].
+   */
+  void recompute(ASLNode<K, V, A> node, int level) {
+    ASLNode<K, V, A> target = node.next[level];
+    if (target == null) {
+      node.aggregates[level] = null;
+    } else if (level == 0) {
+      node.aggregates[0] = this.lift.apply(target.value);
+    } else {
+      A result = this.identity;
+      for (ASLNode<K, V, A> temp = node; temp != target; temp = temp.next[level - 1]) {
+        result = this.combine.apply(result, temp.aggregates[level - 1]);
+      } // for
+      node.aggregates[level] = result;
+    } // if/else
+  } // recompute(ASLNode<K, V, A>, int)
+
+  /**
+   * Determine if node is a node whose key is no later than to.
+   */
+  boolean within(ASLNode<K, V, A> node, K to) {
+    return node != null && this.comparator.compare(node.key, to) <= 0;
+  } // within(ASLNode<K, V, A>, K)
+
+  /**
+   * Drop the references in update, so that they don't keep removed nodes alive.
+   */
+  void clearUpdate() {
+    Arrays.fill(this.update, 0, Math.max(this.height, 1), null);
+  } // clearUpdate()
+
+  /**
+   * Pick a random height for a new node.
+   */
+  static int randomHeight() {
+    int result = 1;
+    while (result < MAX_HEIGHT && rand.nextDouble() < PROB) {
+      result++;
+    } // while
+    return result;
+  } // randomHeight()
+
+  /**
+   * Make an array of n node references.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V, A> ASLNode<K, V, A>[] newNodeArray(int n) {
+    return (ASLNode<K, V, A>[]) new ASLNode<?, ?, ?>[n];
+  } // newNodeArray(int)
+
+} // class AggregateSkipList<K, V, A>
+
+
+/**
+ * Nodes in an AggregateSkipList.
+ */
+class ASLNode<K, V, A> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  K key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes.
+   */
+  ASLNode<K, V, A>[] next;
+
+  /**
+   * The aggregate of each link: aggregates[i] combines the nodes after this one up to and
+   * including next[i] (and is null when next[i] is).
+   */
+  A[] aggregates;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n.
+   */
+  @SuppressWarnings("unchecked")
+  public ASLNode(K key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = AggregateSkipList.newNodeArray(n);
+    this.aggregates = (A[]) new Object[n];
+  } // ASLNode(K, V, int)
+} // ASLNode<K, V, A>
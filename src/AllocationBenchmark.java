@@ -0,0 +1,77 @@
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+// Measure the bytes SkipList allocates per operation, once the JIT has warmed up.
+public class AllocationBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of entries in the list.
+   */
+  static final int SIZE = 100000;
+
+  /*
+   * The number of operations we measure for each workload.
+   */
+  static final int OPS = 1000000;
+
+  /*
+   * Keys, boxed ahead of time so that boxing doesn't show up in the measurements.
+   */
+  static Integer[] keys = new Integer[2 * SIZE];
+
+  static SkipList<Integer, String> list;
+
+  public static void main(String[] args) {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    // even keys are in the list, odd keys are not
+    for (int i = 0; i < keys.length; i += 2) {
+      list.set(keys[i], "hello");
+    }
+
+    // run everything once to warm up, then again to measure
+    for (int round = 0; round < 2; round++) {
+      boolean report = round == 1;
+      measure("get (hit)", report, (random) -> list.get(keys[2 * random.nextInt(SIZE)]));
+      measure("containsKey (miss)", report,
+          (random) -> list.containsKey(keys[2 * random.nextInt(SIZE) + 1]));
+      measure("set (overwrite)", report,
+          (random) -> list.set(keys[2 * random.nextInt(SIZE)], "hello"));
+      measure("remove (miss)", report, (random) -> list.remove(keys[2 * random.nextInt(SIZE) + 1]));
+      measure("set + remove (churn)", report, (random) -> {
+        Integer key = keys[2 * random.nextInt(SIZE) + 1];
+        list.set(key, "hello");
+        list.remove(key);
+      });
+    }
+  }
+
+  /*
+   * run op OPS times and print the bytes allocated per call
+   */
+  static void measure(String name, boolean report, Op op) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    Random random = new Random(42);
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < OPS; i++) {
+      op.run(random);
+    }
+    long after = threads.getThreadAllocatedBytes(thread);
+    if (report) {
+      pen.printf("%-22s %6.1f B/op%n", name, (after - before) / (double) OPS);
+    }
+  }
+
+  /*
+   * one operation on the list
+   */
+  interface Op {
+    void run(Random random);
+  }
+}
@@ -0,0 +1,92 @@
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+// Compare SkipList with ArenaSkipList: memory per entry, get and churn latency, bytes allocated
+// by churn, and the time a full collection takes with the list on the heap.
+public class ArenaBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in each list.
+   */
+  static final int SIZE = 1000000;
+
+  /*
+   * The number of operations we time (after the same number to warm up).
+   */
+  static final int OPS = 2000000;
+
+  /*
+   * Keys, boxed ahead of time so that the lists share them and boxing doesn't show up in the
+   * measurements. The lists hold the even ones.
+   */
+  static Integer[] keys = new Integer[2 * SIZE];
+
+  public static void main(String[] args) {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    for (int round = 0; round < 2; round++) {
+      boolean arena = round == 1;
+      long before = usedMemory();
+      SimpleMap<Integer, String> map = arena
+          ? new ArenaSkipList<Integer, String>((i, j) -> Integer.compare(i, j))
+          : new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+      Random random = new Random(42);
+      for (int i = 0; i < SIZE; i++) {
+        map.set(keys[2 * random.nextInt(SIZE)], "hello");
+      }
+      long bytes = usedMemory() - before;
+      long start = System.nanoTime();
+      System.gc();
+      long gcMillis = (System.nanoTime() - start) / 1000000;
+      pen.printf("%-14s %4d B/entry, full GC %4d ms, get %5d ns, churn %5d ns %6.1f B/op%n",
+          arena ? "ArenaSkipList" : "SkipList", bytes / map.size(), gcMillis,
+          time(map, false), time(map, true), churnBytes);
+    }
+  }
+
+  /*
+   * The bytes allocated per operation by the last churn timing.
+   */
+  static double churnBytes;
+
+  /*
+   * the average nanoseconds for a get (or, for churn, a set of a missing key and a remove)
+   */
+  static long time(SimpleMap<Integer, String> map, boolean churn) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    Random random = new Random(7);
+    long start = 0;
+    long allocated = 0;
+    for (int round = 0; round < 2; round++) {
+      start = System.nanoTime();
+      allocated = threads.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < OPS; i++) {
+        if (churn) {
+          Integer key = keys[2 * random.nextInt(SIZE) + 1];
+          map.set(key, "hello");
+          map.remove(key);
+        } else {
+          map.containsKey(keys[2 * random.nextInt(SIZE)]);
+        }
+      }
+    }
+    churnBytes = (threads.getThreadAllocatedBytes(thread) - allocated) / (double) OPS;
+    return (System.nanoTime() - start) / OPS;
+  }
+
+  /*
+   * the bytes in use on the heap, after collecting garbage
+   */
+  static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,341 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list that keeps all of its nodes in a few arrays instead of one object per node. A node
+ * is an int index (a slot): its key and value are keys[slot] and values[slot], its height is
+ * heights[slot], and its links are the heights[slot] ints of links starting at links[base[slot]],
+ * each of which is the slot of the next node at that level. Slot 0 is the node before the first
+ * node, so a link of 0 means there is no next node.
+ *
+ * Compared with SkipList, there are no node objects for the collector to trace, a link takes
+ * 4 bytes, and nodes added in order sit next to each other in memory. remove puts a node's slot
+ * on a free list for its height, and set reuses it (with its block of links), so a list with
+ * steady churn allocates nothing.
+ */
+public class ArenaSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The maximum height of a node.
+   */
+  static final int MAX_HEIGHT = 16;
+
+  /**
+   * The slot of the node before the first node.
+   */
+  static final int HEAD = 0;
+
+  /**
+   * The number of slots we start with.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  static Random rand = new Random();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  Comparator<? super K> comparator;
+
+  /**
+   * The key and value in each slot (null in free slots).
+   */
+  Object[] keys;
+  Object[] values;
+
+  /**
+   * The height of the node in each slot.
+   */
+  byte[] heights;
+
+  /**
+   * The position in links of the first link of each slot.
+   */
+  int[] base;
+
+  /**
+   * The links of all of the nodes.
+   */
+  int[] links;
+
+  /**
+   * The number of slots in use or on a free list (including the head), and the number of links
+   * given out.
+   */
+  int slots;
+  int linksUsed;
+
+  /**
+   * free[h] is the first free slot of height h (or 0, if there is none). The first link of a free
+   * slot holds the next free slot of the same height.
+   */
+  int[] free = new int[MAX_HEIGHT + 1];
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The height of the tallest node.
+   */
+  int height;
+
+  /**
+   * The predecessors found by the last call to find.
+   */
+  int[] update = new int[MAX_HEIGHT];
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new list that orders keys using the specified comparator.
+   */
+  public ArenaSkipList(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+    this.keys = new Object[INITIAL_CAPACITY];
+    this.values = new Object[INITIAL_CAPACITY];
+    this.heights = new byte[INITIAL_CAPACITY];
+    this.base = new int[INITIAL_CAPACITY];
+    this.links = new int[2 * INITIAL_CAPACITY + MAX_HEIGHT];
+    this.heights[HEAD] = MAX_HEIGHT;
+    this.slots = 1;
+    this.linksUsed = MAX_HEIGHT;
+  } // ArenaSkipList(Comparator)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    int found = find(key);
+    if (found != 0) {
+      V old = value(found);
+      this.values[found] = value;
+      return old;
+    }
+
+    int h = randomHeight();
+    for (int i = this.height; i < h; i++) {
+      this.update[i] = HEAD;
+    } // for
+    this.height = Math.max(this.height, h);
+    int slot = allocate(h);
+    this.keys[slot] = key;
+    this.values[slot] = value;
+    int[] links = this.links;
+    int first = this.base[slot];
+    for (int i = 0; i < h; i++) {
+      int pred = this.base[this.update[i]] + i;
+      links[first + i] = links[pred];
+      links[pred] = slot;
+    } // for
+    this.size++;
+    return null;
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    int found = find(key);
+    if (found == 0) {
+      throw new IndexOutOfBoundsException("The key was not found.");
+    }
+    return value(found);
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return key != null && find(key) != 0;
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    int found = find(key);
+    if (found == 0) {
+      return null;
+    }
+    V old = value(found);
+    int h = this.heights[found];
+    int[] links = this.links;
+    int first = this.base[found];
+    for (int i = 0; i < h; i++) {
+      links[this.base[this.update[i]] + i] = links[first + i];
+    } // for
+    while (this.height > 0 && links[this.base[HEAD] + this.height - 1] == 0) {
+      this.height--;
+    } // while
+    release(found);
+    this.size--;
+    return old;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new Iterator<K>() {
+      int next = ArenaSkipList.this.links[ArenaSkipList.this.base[HEAD]];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != 0;
+      } // hasNext()
+
+      @Override
+      public K next() {
+        if (this.next == 0) {
+          throw new IllegalStateException();
+        }
+        K key = key(this.next);
+        this.next = ArenaSkipList.this.links[ArenaSkipList.this.base[this.next]];
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      int next = ArenaSkipList.this.links[ArenaSkipList.this.base[HEAD]];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != 0;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == 0) {
+          throw new IllegalStateException();
+        }
+        V value = value(this.next);
+        this.next = ArenaSkipList.this.links[ArenaSkipList.this.base[this.next]];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int slot = this.links[this.base[HEAD]]; slot != 0; slot = this.links[this.base[slot]]) {
+      action.accept(key(slot), value(slot));
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the slot of the node with the given key (or 0, if there is none), filling in update.
+   *
+   * @throws NullPointerException if the key is null.
+   */
+  int find(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    }
+    int[] links = this.links;
+    int[] base = this.base;
+    int temp = HEAD;
+    int next = 0;
+    for (int level = this.height - 1; level >= 0; level--) {
+      while ((next = links[base[temp] + level]) != 0
+          && this.comparator.compare(key(next), key) < 0) {
+        temp = next;
+      } // while
+      this.update[level] = temp;
+    } // for
+    return (next != 0 && this.comparator.compare(key(next), key) == 0) ? next : 0;
+  } // find(K)
+
+  /**
+   * Get a slot for a node of height h, from the free list if there is one there, or else from
+   * the end of the arrays (which we grow as needed).
+   */
+  int allocate(int h) {
+    int slot = this.free[h];
+    if (slot != 0) {
+      this.free[h] = this.links[this.base[slot]];
+      this.links[this.base[slot]] = 0;
+      return slot;
+    }
+    if (this.slots == this.keys.length) {
+      int capacity = 2 * this.keys.length;
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+      this.heights = Arrays.copyOf(this.heights, capacity);
+      this.base = Arrays.copyOf(this.base, capacity);
+    }
+    if (this.linksUsed + h > this.links.length) {
+      this.links = Arrays.copyOf(this.links, 2 * this.links.length + h);
+    }
+    slot = this.slots++;
+    this.heights[slot] = (byte) h;
+    this.base[slot] = this.linksUsed;
+    this.linksUsed += h;
+    return slot;
+  } // allocate(int)
+
+  /**
+   * Put a slot that is no longer in the list on the free list for its height, dropping its key
+   * and value.
+   */
+  void release(int slot) {
+    int h = this.heights[slot];
+    this.keys[slot] = null;
+    this.values[slot] = null;
+    Arrays.fill(this.links, this.base[slot], this.base[slot] + h, 0);
+    this.links[this.base[slot]] = this.free[h];
+    this.free[h] = slot;
+  } // release(int)
+
+  /**
+   * Get the key in a slot.
+   */
+  @SuppressWarnings("unchecked")
+  K key(int slot) {
+    return (K) this.keys[slot];
+  } // key(int)
+
+  /**
+   * Get the value in a slot.
+   */
+  @SuppressWarnings("unchecked")
+  V value(int slot) {
+    return (V) this.values[slot];
+  } // value(int)
+
+  /**
+   * Pick a random height for a new node.
+   */
+  static int randomHeight() {
+    int result = 1;
+    while (result < MAX_HEIGHT && rand.nextBoolean()) {
+      result++;
+    } // while
+    return result;
+  } // randomHeight()
+
+} // class ArenaSkipList<K, V>
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subscription to the changes made to a SkipList, in the order they were made. Changes wait in
+ * a bounded buffer until the subscriber polls for them, a batch at a time. When the buffer is
+ * full, whatever is changing the list waits for the subscriber to catch up, so the subscriber
+ * must poll from a different thread.
+ */
+public class ChangeSubscription<K, V> implements AutoCloseable {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list we watch.
+   */
+  SkipList<K, V> list;
+
+  /**
+   * The changes not yet polled.
+   */
+  ArrayBlockingQueue<Mutation<K, V>> buffer;
+
+  /**
+   * The sequence number of the last change published to us.
+   */
+  volatile long published;
+
+  /**
+   * Whether the subscription has been closed.
+   */
+  volatile boolean closed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a subscription to list that buffers up to capacity changes. (See
+   * SkipList.subscribe.)
+   */
+  ChangeSubscription(SkipList<K, V> list, int capacity) {
+    this.list = list;
+    this.buffer = new ArrayBlockingQueue<Mutation<K, V>>(capacity);
+  } // ChangeSubscription(SkipList<K, V>, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Take up to maxBatch changes, waiting up to timeout for the first one.
+   * 
+   * @return the changes, oldest first (empty, if none came in time).
+   */
+  public List<Mutation<K, V>> poll(int maxBatch, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    ArrayList<Mutation<K, V>> batch = new ArrayList<Mutation<K, V>>();
+    Mutation<K, V> first = this.buffer.poll(timeout, unit);
+    if (first != null) {
+      batch.add(first);
+      this.buffer.drainTo(batch, maxBatch - 1);
+    } // if
+    return batch;
+  } // poll(int, long, TimeUnit)
+
+  /**
+   * Get the sequence number of the last change made to the list while we were subscribed.
+   */
+  public long published() {
+    return this.published;
+  } // published()
+
+  /**
+   * Count the changes waiting to be polled.
+   */
+  public int pending() {
+    return this.buffer.size();
+  } // pending()
+
+  /**
+   * Stop receiving changes (releasing a writer that is waiting for room).
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.list.subscribers.remove(this);
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add a change to the buffer, waiting for room if it is full. The list has already changed, so
+   * an interrupt doesn't stop us waiting (we set the interrupt status again afterwards); only
+   * closing the subscription does.
+   */
+  void publish(Mutation<K, V> mutation) {
+    this.published = mutation.sequence;
+    boolean interrupted = false;
+    while (!this.closed) {
+      try {
+        if (this.buffer.offer(mutation, 10, TimeUnit.MILLISECONDS)) {
+          break;
+        } // if
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try/catch
+    } // while
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+  } // publish(Mutation<K, V>)
+
+} // class ChangeSubscription<K, V>
@@ -0,0 +1,63 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A way to write values of some type to a stream and read them back (used for replication).
+ */
+public interface Codec<T> {
+  /**
+   * Write value to out.
+   */
+  public void write(DataOutputStream out, T value) throws IOException;
+
+  /**
+   * Read a value written by write.
+   */
+  public T read(DataInputStream in) throws IOException;
+
+  /**
+   * Strings, as modified UTF-8 (up to 64 KB each).
+   */
+  public static final Codec<String> STRING = new Codec<String>() {
+    @Override
+    public void write(DataOutputStream out, String value) throws IOException {
+      out.writeUTF(value);
+    } // write(DataOutputStream, String)
+
+    @Override
+    public String read(DataInputStream in) throws IOException {
+      return in.readUTF();
+    } // read(DataInputStream)
+  };
+
+  /**
+   * Integers, as four bytes.
+   */
+  public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+    @Override
+    public void write(DataOutputStream out, Integer value) throws IOException {
+      out.writeInt(value);
+    } // write(DataOutputStream, Integer)
+
+    @Override
+    public Integer read(DataInputStream in) throws IOException {
+      return in.readInt();
+    } // read(DataInputStream)
+  };
+
+  /**
+   * Longs, as eight bytes.
+   */
+  public static final Codec<Long> LONG = new Codec<Long>() {
+    @Override
+    public void write(DataOutputStream out, Long value) throws IOException {
+      out.writeLong(value);
+    } // write(DataOutputStream, Long)
+
+    @Override
+    public Long read(DataInputStream in) throws IOException {
+      return in.readLong();
+    } // read(DataInputStream)
+  };
+} // interface Codec<T>
@@ -0,0 +1,77 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Compare write throughput of FlatCombiningMap with lock-wrapped SkipLists as threads are added.
+public class CombiningBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of distinct keys the threads use.
+   */
+  static final int KEYS = 100000;
+
+  /*
+   * How long to run each test, in milliseconds.
+   */
+  static final long RUN_MILLIS = 1000;
+
+  public static void main(String[] args) throws Exception {
+    for (int threads : new int[] {1, 2, 4, 8, 16, 32}) {
+      pen.println("Threads = " + threads);
+      pen.println("  synchronized ops/sec = "
+          + throughput(new LockedMap<Integer, String>(preload()), threads));
+      pen.println("  ReentrantLock (unfair) ops/sec = " + throughput(
+          new LockedMap<Integer, String>(preload(), new ReentrantLock(false)), threads));
+      pen.println("  ReentrantLock (fair) ops/sec = " + throughput(
+          new LockedMap<Integer, String>(preload(), new ReentrantLock(true)), threads));
+      pen.println("  flat combining ops/sec = "
+          + throughput(new FlatCombiningMap<Integer, String>(preload()), threads));
+    }
+  }
+
+  /*
+   * a list with half of the keys in it
+   */
+  static SkipList<Integer, String> preload() {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    for (int i = 0; i < KEYS; i += 2) {
+      list.set(i, "hello");
+    }
+    return list;
+  }
+
+  /*
+   * the number of set/remove calls per second that threads threads manage on map
+   */
+  static long throughput(SimpleMap<Integer, String> map, int threads) throws Exception {
+    AtomicLong ops = new AtomicLong();
+    long deadline = System.currentTimeMillis() + RUN_MILLIS;
+    ArrayList<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      long seed = t;
+      Thread worker = new Thread(() -> {
+        Random random = new Random(seed);
+        long count = 0;
+        while (System.currentTimeMillis() < deadline) {
+          int key = random.nextInt(KEYS);
+          if (random.nextBoolean()) {
+            map.set(key, "hello");
+          } else {
+            map.remove(key);
+          }
+          count++;
+        }
+        ops.addAndGet(count);
+      });
+      workers.add(worker);
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    return ops.get() * 1000 / RUN_MILLIS;
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * One thread's published operation.
+ */
+class CombiningSlot<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  static final int SET = 0;
+  static final int REMOVE = 1;
+  static final int GET = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The operation (SET, REMOVE, or GET).
+   */
+  int op;
+
+  /**
+   * The key.
+   */
+  K key;
+
+  /**
+   * The value (for SET).
+   */
+  V value;
+
+  /**
+   * The result of the operation.
+   */
+  V result;
+
+  /**
+   * The exception the operation threw (or null).
+   */
+  RuntimeException failure;
+
+  /**
+   * Whether the operation is waiting for a combiner. Writing it publishes the other fields.
+   */
+  volatile boolean pending;
+
+  /**
+   * Whether the slot is among those the combiner scans.
+   */
+  volatile boolean active;
+
+  /**
+   * The combining pass that last found an operation here (or that added the slot).
+   */
+  long lastPass;
+} // CombiningSlot<K, V>
@@ -0,0 +1,149 @@
+/**
+ * A counting Bloom filter. Unlike a plain Bloom filter, each slot holds a small counter rather than
+ * a single bit, so keys can be removed again. The filter answers "definitely not present" or "maybe
+ * present".
+ */
+public class CountingBloomFilter<K> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of counters we use per expected key. About 10 gives a false-positive rate of
+   * roughly 1%.
+   */
+  static final int SLOTS_PER_KEY = 10;
+
+  /**
+   * The number of hash functions. (ln 2 * SLOTS_PER_KEY, rounded.)
+   */
+  static final int HASHES = 7;
+
+  /**
+   * The largest value a counter can hold. Counters that reach it stay there forever, so that we
+   * never decrement a counter below the number of keys that really map to it.
+   */
+  static final int SATURATED = 255;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The counters (stored unsigned).
+   */
+  byte[] counters;
+
+  /**
+   * The number of keys the filter was sized for.
+   */
+  int capacity;
+
+  /**
+   * The number of keys currently in the filter.
+   */
+  int count;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new filter sized for capacity keys.
+   */
+  public CountingBloomFilter(int capacity) {
+    this.capacity = Math.max(capacity, 16);
+    this.counters = new byte[this.capacity * SLOTS_PER_KEY];
+    this.count = 0;
+  } // CountingBloomFilter(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a key to the filter.
+   */
+  public void add(K key) {
+    int h1 = key.hashCode();
+    int h2 = secondHash(h1);
+    for (int i = 0; i < HASHES; i++) {
+      int slot = slot(h1, h2, i);
+      int c = this.counters[slot] & 0xFF;
+      if (c < SATURATED) {
+        this.counters[slot] = (byte) (c + 1);
+      }
+    } // for
+    this.count++;
+  } // add(K)
+
+  /**
+   * Remove a key from the filter. The key must previously have been added.
+   */
+  public void remove(K key) {
+    int h1 = key.hashCode();
+    int h2 = secondHash(h1);
+    for (int i = 0; i < HASHES; i++) {
+      int slot = slot(h1, h2, i);
+      int c = this.counters[slot] & 0xFF;
+      if (c > 0 && c < SATURATED) {
+        this.counters[slot] = (byte) (c - 1);
+      }
+    } // for
+    this.count--;
+  } // remove(K)
+
+  /**
+   * Determine if the key might be in the filter. A false result is always correct.
+   */
+  public boolean mightContain(K key) {
+    int h1 = key.hashCode();
+    int h2 = secondHash(h1);
+    for (int i = 0; i < HASHES; i++) {
+      if (this.counters[slot(h1, h2, i)] == 0) {
+        return false;
+      }
+    } // for
+    return true;
+  } // mightContain(K)
+
+  /**
+   * Determine if the filter holds more keys than it was sized for (and so should be rebuilt).
+   */
+  public boolean isOverloaded() {
+    return this.count > this.capacity;
+  } // isOverloaded()
+
+  /**
+   * The false-positive rate we expect given the current number of keys.
+   */
+  public double expectedFalsePositiveRate() {
+    double m = this.counters.length;
+    return Math.pow(1 - Math.exp(-HASHES * this.count / m), HASHES);
+  } // expectedFalsePositiveRate()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Derive a second, independent-ish hash from the first (for double hashing).
+   */
+  static int secondHash(int h) {
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    h *= 0xc2b2ae35;
+    h ^= (h >>> 16);
+    return h | 1;
+  } // secondHash(int)
+
+  /**
+   * Find the ith slot for a key with hashes h1 and h2.
+   */
+  int slot(int h1, int h2, int i) {
+    return Math.floorMod(h1 + i * h2, this.counters.length);
+  } // slot(int, int, int)
+
+} // class CountingBloomFilter<K>
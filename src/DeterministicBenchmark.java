@@ -0,0 +1,70 @@
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Compare the tail of the search cost and latency of randomized and deterministic SkipLists.
+public class DeterministicBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in the list.
+   */
+  static final int SIZE = 50000;
+
+  /*
+   * The number of operations we measure (after the same number to warm up).
+   */
+  static final int OPS = 2000000;
+
+  public static void main(String[] args) {
+    for (int round = 0; round < 2; round++) {
+      boolean report = round == 1;
+      run("randomized", false, report);
+      run("deterministic", true, report);
+    }
+  }
+
+  /*
+   * time gets, and churn (a set and a remove), on a list in the given mode
+   */
+  static void run(String name, boolean deterministic, boolean report) {
+    Random random = new Random(42);
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    list.setDeterministic(deterministic);
+    for (int i = 0; i < SIZE; i++) {
+      list.set(2 * random.nextInt(SIZE * 4), "hello");
+    }
+
+    LatencyHistogram steps = new LatencyHistogram();
+    LatencyHistogram gets = new LatencyHistogram();
+    LatencyHistogram churn = new LatencyHistogram();
+    for (int i = 0; i < OPS; i++) {
+      Integer key = 2 * random.nextInt(SIZE * 4);
+      SkipList.operationCount = 0;
+      long start = System.nanoTime();
+      list.containsKey(key);
+      gets.record(System.nanoTime() - start);
+      steps.record(SkipList.operationCount);
+
+      Integer odd = key + 1;
+      start = System.nanoTime();
+      list.set(odd, "hello");
+      list.remove(odd);
+      churn.record(System.nanoTime() - start);
+    }
+    if (report) {
+      pen.println(name + " (height " + list.height + "):");
+      print("  get counter", steps, "");
+      print("  get", gets, " ns");
+      print("  set + remove", churn, " ns");
+    }
+  }
+
+  /*
+   * print the percentiles of a histogram
+   */
+  static void print(String name, LatencyHistogram histogram, String unit) {
+    pen.println(name + ": p50 " + histogram.valueAtPercentile(50) + unit + ", p99 "
+        + histogram.valueAtPercentile(99) + unit + ", p99.99 "
+        + histogram.valueAtPercentile(99.99) + unit + ", max " + histogram.max() + unit);
+  }
+}
@@ -0,0 +1,128 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Compare SkipListEngine with a lock-wrapped SkipList, with many clients at once.
+public class EngineBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of distinct keys the clients use.
+   */
+  static final int KEYS = 100000;
+
+  /*
+   * The number of operations each client makes.
+   */
+  static final int OPS_PER_CLIENT = 500;
+
+  public static void main(String[] args) throws Exception {
+    for (int clients : new int[] {16, 256, 2048}) {
+      benchmark(clients);
+    }
+  }
+
+  /*
+   * run both versions with the given number of clients
+   */
+  static void benchmark(int clients) throws Exception {
+    LockedMap<Integer, String> locked = new LockedMap<Integer, String>(preload());
+    long lockedMillis = time(clients, (random) -> {
+      int key = random.nextInt(KEYS);
+      if (random.nextBoolean()) {
+        locked.set(key, "hello");
+      } else {
+        locked.containsKey(key);
+      }
+    });
+
+    SkipListEngine<Integer, String> engine = new SkipListEngine<Integer, String>(preload(), 4096);
+    long engineMillis = time(clients, (random) -> {
+      int key = random.nextInt(KEYS);
+      CompletableFuture<String> result;
+      if (random.nextBoolean()) {
+        result = engine.set(key, "hello");
+      } else {
+        result = engine.get(key).exceptionally((e) -> null);
+      }
+      result.join();
+    });
+    engine.close();
+
+    long ops = (long) clients * OPS_PER_CLIENT;
+    pen.println("Clients = " + clients + " (" + threadKind() + " threads)");
+    pen.println("Locked SkipList ops/sec = " + ops * 1000 / Math.max(lockedMillis, 1));
+    pen.println("SkipListEngine ops/sec = " + ops * 1000 / Math.max(engineMillis, 1));
+  }
+
+  /*
+   * a list with half of the keys in it
+   */
+  static SkipList<Integer, String> preload() {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    for (int i = 0; i < KEYS; i += 2) {
+      list.set(i, "hello");
+    }
+    return list;
+  }
+
+  /*
+   * the milliseconds it takes for the given number of clients to each run op OPS_PER_CLIENT times
+   */
+  static long time(int clients, Op op) throws Exception {
+    ExecutorService executor = executor(clients);
+    ArrayList<Future<?>> done = new ArrayList<Future<?>>();
+    long start = System.currentTimeMillis();
+    for (int c = 0; c < clients; c++) {
+      long seed = c;
+      done.add(executor.submit(() -> {
+        Random random = new Random(seed);
+        for (int i = 0; i < OPS_PER_CLIENT; i++) {
+          op.run(random);
+        }
+      }));
+    }
+    for (Future<?> f : done) {
+      f.get();
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    executor.shutdown();
+    return elapsed;
+  }
+
+  /*
+   * one virtual thread per client when the JDK has them, and one platform thread per client
+   * otherwise
+   */
+  static ExecutorService executor(int clients) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(clients);
+    }
+  }
+
+  /*
+   * the kind of threads executor() makes
+   */
+  static String threadKind() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return "virtual";
+    } catch (NoSuchMethodException e) {
+      return "platform";
+    }
+  }
+
+  /*
+   * one client operation
+   */
+  interface Op {
+    void run(Random random);
+  }
+}
@@ -0,0 +1,20 @@
+/**
+ * The formats in which a skip list can write out its entries.
+ */
+public enum ExportFormat {
+  /**
+   * The same text that toString() produces.
+   */
+  TEXT,
+
+  /**
+   * One "key,value" line per entry, after a header line, with fields quoted as needed.
+   */
+  CSV,
+
+  /**
+   * The number of entries (as a 4-byte int), followed by each key and each value as a 4-byte
+   * length and that many bytes of UTF-8.
+   */
+  BINARY
+} // ExportFormat
@@ -0,0 +1,290 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe wrapper around a skip list that uses flat combining. Each thread publishes its
+ * operation in a slot of its own. Whichever thread gets the combiner lock then applies every
+ * published operation to the list in one batch, while the others wait for their results. So the
+ * lock (and the list) stay in one thread's cache for the whole batch, instead of bouncing between
+ * threads on every operation.
+ * 
+ * The combiner sorts each batch by key, so that consecutive searches share most of their path.
+ * Each thread has at most one operation in flight, so the sort never reorders two operations of
+ * the same thread.
+ * 
+ * As in Hendler et al., the combiner retires slots that have been idle for a while (including
+ * those of threads that have died), so the slots it scans stay in proportion to the threads that
+ * are actually using the map. A thread whose slot was retired adds it back on its next operation.
+ */
+public class FlatCombiningMap<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many times a waiting thread spins before it yields.
+   */
+  static final int SPINS = 64;
+
+  /**
+   * How many combining passes a slot may go without an operation before we retire it.
+   */
+  static final int RETIRE_PASSES = 1024;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list we protect.
+   */
+  SkipList<K, V> list;
+
+  /**
+   * The combiner lock. Whoever holds it may use the list.
+   */
+  ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The active slots: those that have had an operation in the last RETIRE_PASSES passes.
+   */
+  CopyOnWriteArrayList<CombiningSlot<K, V>> slots = new CopyOnWriteArrayList<CombiningSlot<K, V>>();
+
+  /**
+   * The slot of the current thread. (A new slot is not active until the thread first uses it.)
+   */
+  ThreadLocal<CombiningSlot<K, V>> mySlot = ThreadLocal.withInitial(CombiningSlot::new);
+
+  /**
+   * The number of combining passes so far. (Only used while holding the lock.)
+   */
+  long passes;
+
+  /**
+   * The batch being combined. (Only used while holding the lock.)
+   */
+  ArrayList<CombiningSlot<K, V>> batch = new ArrayList<CombiningSlot<K, V>>();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Protect list. No one else should use the list directly afterwards.
+   */
+  public FlatCombiningMap(SkipList<K, V> list) {
+    this.list = list;
+  } // FlatCombiningMap(SkipList<K, V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    return perform(CombiningSlot.SET, key, value);
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    return perform(CombiningSlot.GET, key, null);
+  } // get(K)
+
+  @Override
+  public V remove(K key) {
+    return perform(CombiningSlot.REMOVE, key, null);
+  } // remove(K)
+
+  @Override
+  public boolean containsKey(K key) {
+    if (key == null) {
+      return false;
+    } // if
+    try {
+      perform(CombiningSlot.GET, key, null);
+      return true;
+    } catch (IndexOutOfBoundsException e) {
+      return false;
+    } // try/catch
+  } // containsKey(K)
+
+  @Override
+  public int size() {
+    this.lock.lock();
+    try {
+      return this.list.size();
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // size()
+
+  @Override
+  public Iterator<K> keys() {
+    ArrayList<K> copy = new ArrayList<K>();
+    forEach((key, value) -> copy.add(key));
+    return copy.iterator();
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    ArrayList<V> copy = new ArrayList<V>();
+    forEach((key, value) -> copy.add(value));
+    return copy.iterator();
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    this.lock.lock();
+    try {
+      this.list.forEach(action);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // forEach(BiConsumer)
+
+  // +---------------+-----------------------------------------------
+  // | Other methods |
+  // +---------------+
+
+  /**
+   * Get an iterator for the values of up to limit keys greater than or equal to fromKey, from
+   * smallest key to largest. Like the other iterators, it works on a copy, taken under the lock.
+   */
+  public Iterator<V> values(K fromKey, int limit) {
+    ArrayList<V> copy = new ArrayList<V>();
+    this.lock.lock();
+    try {
+      Iterator<V> values = this.list.values(fromKey);
+      while (copy.size() < limit && values.hasNext()) {
+        copy.add(values.next());
+      } // while
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+    return copy.iterator();
+  } // values(K, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Publish an operation and wait until some combiner (possibly this thread) has applied it.
+   */
+  V perform(int op, K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    CombiningSlot<K, V> slot = this.mySlot.get();
+    slot.op = op;
+    slot.key = key;
+    slot.value = value;
+    slot.pending = true;
+    // (we set pending before we check active, and retire clears active before it checks pending,
+    // so at least one of us notices the other)
+    if (!slot.active) {
+      this.lock.lock();
+      try {
+        if (!slot.active) {
+          slot.active = true;
+          slot.lastPass = this.passes;
+          this.slots.add(slot);
+        } // if
+      } finally {
+        this.lock.unlock();
+      } // try/finally
+    } // if
+
+    int spins = 0;
+    while (slot.pending) {
+      if (this.lock.tryLock()) {
+        try {
+          combine();
+        } finally {
+          this.lock.unlock();
+        } // try/finally
+      } else if (++spins < SPINS) {
+        Thread.onSpinWait();
+      } else {
+        Thread.yield();
+      } // if/else
+    } // while
+
+    V result = slot.result;
+    RuntimeException failure = slot.failure;
+    slot.key = null;
+    slot.value = null;
+    slot.result = null;
+    slot.failure = null;
+    if (failure != null) {
+      throw failure;
+    } // if
+    return result;
+  } // perform(int, K, V)
+
+  /**
+   * Apply every pending operation, in key order. Must hold the lock.
+   */
+  void combine() {
+    this.passes++;
+    for (CombiningSlot<K, V> slot : this.slots) {
+      if (slot.pending) {
+        slot.lastPass = this.passes;
+        this.batch.add(slot);
+      } else if (this.passes - slot.lastPass > RETIRE_PASSES) {
+        retire(slot);
+      } // if/else
+    } // for
+    RuntimeException failure = null;
+    try {
+      this.batch.sort((s1, s2) -> this.list.comparator.compare(s1.key, s2.key));
+      for (CombiningSlot<K, V> slot : this.batch) {
+        try {
+          if (slot.op == CombiningSlot.SET) {
+            slot.result = this.list.set(slot.key, slot.value);
+          } else if (slot.op == CombiningSlot.REMOVE) {
+            slot.result = this.list.remove(slot.key);
+          } else {
+            slot.result = this.list.get(slot.key);
+          } // if/else
+        } catch (RuntimeException e) {
+          slot.failure = e;
+        } // try/catch
+        slot.pending = false;
+      } // for
+    } catch (RuntimeException e) {
+      // the comparator threw while we sorted, so none of the batch has been applied
+      failure = e;
+    } finally {
+      // fail whatever we didn't get to (after an Error, too), so that no one waits forever and
+      // the next combiner doesn't apply it again
+      for (CombiningSlot<K, V> slot : this.batch) {
+        if (slot.pending) {
+          slot.failure = (failure != null) ? failure : new IllegalStateException("combiner failed");
+          slot.pending = false;
+        } // if
+      } // for
+      this.batch.clear();
+    } // try/catch/finally
+  } // combine()
+
+  /**
+   * Stop scanning an idle slot, unless its thread has just published an operation in it. Must
+   * hold the lock.
+   */
+  void retire(CombiningSlot<K, V> slot) {
+    slot.active = false;
+    if (slot.pending) {
+      slot.active = true;
+      slot.lastPass = this.passes;
+      this.batch.add(slot);
+    } else {
+      this.slots.remove(slot);
+    } // if/else
+  } // retire(CombiningSlot<K, V>)
+
+} // class FlatCombiningMap<K, V>
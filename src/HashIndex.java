@@ -0,0 +1,142 @@
+/**
+ * An open-addressing hash table from the keys of a skip list to their nodes, used in hybrid mode
+ * so that exact-key lookups don't have to descend the list. We probe linearly and keep the table
+ * at most half full; removals shift the following entries back instead of leaving tombstones.
+ */
+class HashIndex<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The smallest table we make.
+   */
+  static final int MIN_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The keys in each slot (null for an empty slot). We keep the keys apart from the nodes, since
+   * deterministic mode sometimes moves a key from one node to another.
+   */
+  Object[] keys;
+
+  /**
+   * The node for the key in each slot.
+   */
+  SLNode<K, V>[] nodes;
+
+  /**
+   * The number of keys in the table.
+   */
+  int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a table holding every node of list (tombstones included).
+   */
+  HashIndex(SkipList<K, V> list) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < 2 * (list.size + list.tombstones)) {
+      capacity *= 2;
+    } // while
+    this.keys = new Object[capacity];
+    this.nodes = SkipList.newNodeArray(capacity);
+    for (SLNode<K, V> node = list.dummy.next[0]; node != null; node = node.next[0]) {
+      put(node.key, node);
+    } // for
+  } // HashIndex(SkipList<K, V>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the node for key (or null, if there is none).
+   */
+  SLNode<K, V> get(K key) {
+    int mask = this.keys.length - 1;
+    for (int i = slot(key, mask);; i = (i + 1) & mask) {
+      Object k = this.keys[i];
+      if (k == null) {
+        return null;
+      } else if (k.equals(key)) {
+        return this.nodes[i];
+      } // if/else
+    } // for
+  } // get(K)
+
+  /**
+   * Make key map to node.
+   */
+  void put(K key, SLNode<K, V> node) {
+    int mask = this.keys.length - 1;
+    int i = slot(key, mask);
+    while (this.keys[i] != null && !this.keys[i].equals(key)) {
+      i = (i + 1) & mask;
+    } // while
+    boolean added = this.keys[i] == null;
+    this.keys[i] = key;
+    this.nodes[i] = node;
+    if (added && ++this.size * 2 > this.keys.length) {
+      grow();
+    } // if
+  } // put(K, SLNode<K, V>)
+
+  /**
+   * Remove key, if it is in the table.
+   */
+  void remove(K key) {
+    int mask = this.keys.length - 1;
+    int i = slot(key, mask);
+    while (this.keys[i] != null && !this.keys[i].equals(key)) {
+      i = (i + 1) & mask;
+    } // while
+    if (this.keys[i] == null) {
+      return;
+    } // if
+    this.size--;
+    // shift back every following key in the run that would no longer be found past the hole
+    for (int j = (i + 1) & mask; this.keys[j] != null; j = (j + 1) & mask) {
+      int home = slot(this.keys[j], mask);
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        this.keys[i] = this.keys[j];
+        this.nodes[i] = this.nodes[j];
+        i = j;
+      } // if
+    } // for
+    this.keys[i] = null;
+    this.nodes[i] = null;
+  } // remove(K)
+
+  /**
+   * Double the size of the table.
+   */
+  @SuppressWarnings("unchecked")
+  void grow() {
+    Object[] oldKeys = this.keys;
+    SLNode<K, V>[] oldNodes = this.nodes;
+    this.keys = new Object[2 * oldKeys.length];
+    this.nodes = SkipList.newNodeArray(2 * oldKeys.length);
+    this.size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        put((K) oldKeys[i], oldNodes[i]);
+      } // if
+    } // for
+  } // grow()
+
+  /**
+   * Find the slot where the search for key starts.
+   */
+  static int slot(Object key, int mask) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  } // slot(Object, int)
+} // class HashIndex<K, V>
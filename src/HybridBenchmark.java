@@ -0,0 +1,70 @@
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Compare point operations with and without hybrid mode, at the 500k entries of EfficiencyTests.
+public class HybridBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in the list. (The keys we look up and remove are the odd numbers below
+   * 2 * SIZE; the even ones are never in the list.)
+   */
+  static final int SIZE = 500000;
+
+  /*
+   * The number of operations we time (after the same number to warm up).
+   */
+  static final int OPS = 2000000;
+
+  static Integer[] keys = new Integer[2 * SIZE];
+
+  public static void main(String[] args) {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    for (boolean hybrid : new boolean[] { false, true }) {
+      SkipList<Integer, String> list =
+          new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+      list.setHybrid(hybrid);
+      Random random = new Random(42);
+      for (int i = 0; i < SIZE; i++) {
+        list.set(keys[2 * random.nextInt(SIZE) + 1], "hello");
+      }
+      String name = hybrid ? "hybrid" : "plain";
+      time(name, "get (hit)", list, (r) -> list.containsKey(keys[2 * r.nextInt(SIZE) + 1]));
+      time(name, "get (miss)", list, (r) -> list.containsKey(keys[2 * r.nextInt(SIZE)]));
+      time(name, "set (overwrite)", list, (r) -> list.set(keys[2 * r.nextInt(SIZE) + 1], "hello"));
+      time(name, "remove + set", list, (r) -> {
+        Integer key = keys[2 * r.nextInt(SIZE) + 1];
+        if (list.remove(key) != null) {
+          list.set(key, "hello");
+        }
+      });
+    }
+  }
+
+  /*
+   * print the average nanoseconds and operation count of op
+   */
+  static void time(String name, String op, SkipList<Integer, String> list, Op run) {
+    Random random = new Random(7);
+    for (int i = 0; i < OPS; i++) {
+      run.run(random);
+    }
+    SkipList.operationCount = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < OPS; i++) {
+      run.run(random);
+    }
+    long elapsed = System.nanoTime() - start;
+    pen.printf("%-7s %-16s %5d ns/op, counter = %d%n", name, op, elapsed / OPS,
+        SkipList.operationCount / OPS);
+  }
+
+  /*
+   * one operation on the list
+   */
+  interface Op {
+    void run(Random random);
+  }
+}
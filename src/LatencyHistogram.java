@@ -0,0 +1,101 @@
+/**
+ * A histogram of latencies in the style of HdrHistogram: exact below 128, and above that with
+ * 64 buckets for each power of two, so that every value is recorded to within about 1.5%.
+ * Recording is a shift and an increment, so timing doesn't disturb what we time.
+ */
+class LatencyHistogram {
+
+  /**
+   * The number of buckets for each power of two.
+   */
+  static final int SUB_BUCKETS = 64;
+
+  /**
+   * The counts, indexed by bucket.
+   */
+  long[] counts = new long[SUB_BUCKETS * 58];
+
+  /**
+   * The number of values recorded.
+   */
+  long total;
+
+  /**
+   * The largest value recorded.
+   */
+  long max;
+
+  /**
+   * Record a value (negative values count as 0).
+   */
+  void record(long value) {
+    value = Math.max(value, 0);
+    this.counts[bucket(value)]++;
+    this.total++;
+    this.max = Math.max(this.max, value);
+  } // record(long)
+
+  /**
+   * Add the values recorded in other.
+   */
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < this.counts.length; i++) {
+      this.counts[i] += other.counts[i];
+    } // for
+    this.total += other.total;
+    this.max = Math.max(this.max, other.max);
+  } // add(LatencyHistogram)
+
+  /**
+   * Get the smallest value that at least percentile percent of the values are no larger than
+   * (to within the precision of the buckets).
+   */
+  long valueAtPercentile(double percentile) {
+    long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * this.total));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length; i++) {
+      seen += this.counts[i];
+      if (seen >= wanted) {
+        return Math.min(highest(i), this.max);
+      } // if
+    } // for
+    return this.max;
+  } // valueAtPercentile(double)
+
+  /**
+   * Get the number of values recorded.
+   */
+  long count() {
+    return this.total;
+  } // count()
+
+  /**
+   * Get the largest value recorded.
+   */
+  long max() {
+    return this.max;
+  } // max()
+
+  /**
+   * Find the bucket of a value.
+   */
+  static int bucket(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+    return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+  } // bucket(long)
+
+  /**
+   * Find the largest value that goes in bucket i.
+   */
+  static long highest(int i) {
+    if (i < 2 * SUB_BUCKETS) {
+      return i;
+    }
+    int shift = i / SUB_BUCKETS - 1;
+    long sub = i % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  } // highest(int)
+} // class LatencyHistogram
@@ -0,0 +1,242 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A learned entry index for skip lists with numeric keys. We keep every node that is linked at
+ * level LEVEL (about one node in 2^LEVEL) in a sorted array of anchors, and fit piecewise-linear
+ * models that predict, from a key, where it falls in that array to within EPSILON slots. A lookup
+ * then starts its descent at the anchor just before the key, at level LEVEL, instead of at the top
+ * of the list.
+ * 
+ * The anchors are a snapshot. Nodes added later are simply not used as starting points, and
+ * anchors that are removed are marked as such; once enough of either has happened, the list
+ * retrains the index, which only needs a walk along level LEVEL.
+ */
+class LearnedIndex<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The level whose nodes serve as anchors.
+   */
+  static final int LEVEL = 4;
+
+  /**
+   * The most a model's prediction may be off by, in slots.
+   */
+  static final int EPSILON = 8;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The anchor nodes, in order.
+   */
+  SLNode<K, V>[] anchors;
+
+  /**
+   * removed[i] is true once anchors[i] has been removed from the list.
+   */
+  boolean[] removed;
+
+  /**
+   * The keys of the anchors, as doubles.
+   */
+  double[] anchorKeys;
+
+  /**
+   * The models: segment i covers keys from segmentKeys[i] on, and predicts slot
+   * segmentStarts[i] + segmentSlopes[i] * (key - segmentKeys[i]).
+   */
+  double[] segmentKeys;
+  double[] segmentSlopes;
+  int[] segmentStarts;
+
+  /**
+   * The number of anchors removed and of new nodes tall enough to be anchors since we trained.
+   */
+  int stale;
+
+  /**
+   * The comparator of the list.
+   */
+  Comparator<K> comparator;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Build an index for list.
+   * 
+   * @throws ClassCastException if the list has keys that are not Numbers.
+   */
+  public LearnedIndex(SkipList<K, V> list) {
+    this.comparator = list.comparator;
+    train(list);
+  } // LearnedIndex(SkipList<K, V>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Rebuild the anchors and the models from the current contents of list.
+   */
+  void train(SkipList<K, V> list) {
+    ArrayList<SLNode<K, V>> nodes = new ArrayList<SLNode<K, V>>();
+    for (SLNode<K, V> node = list.dummy.next[LEVEL]; node != null; node = node.next[LEVEL]) {
+      nodes.add(node);
+    } // for
+    int m = nodes.size();
+    this.anchors = nodes.toArray(SkipList.newNodeArray(m));
+    this.anchorKeys = new double[m];
+    this.removed = new boolean[m];
+    for (int i = 0; i < m; i++) {
+      this.anchorKeys[i] = ((Number) this.anchors[i].key).doubleValue();
+    } // for
+
+    // fit segments greedily: extend each one for as long as some line through its first point
+    // stays within EPSILON of every point (the "shrinking cone")
+    double[] keys = new double[m];
+    double[] slopes = new double[m];
+    int[] starts = new int[m];
+    int segments = 0;
+    int start = 0;
+    while (start < m) {
+      double x0 = this.anchorKeys[start];
+      double low = Double.NEGATIVE_INFINITY;
+      double high = Double.POSITIVE_INFINITY;
+      int i = start + 1;
+      while (i < m) {
+        double dx = this.anchorKeys[i] - x0;
+        if (dx <= 0) {
+          // keys too close to tell apart as doubles; the line can't separate them
+          if (i - start > EPSILON) {
+            break;
+          }
+        } else {
+          double newLow = Math.max(low, (i - start - EPSILON) / dx);
+          double newHigh = Math.min(high, (i - start + EPSILON) / dx);
+          if (newLow > newHigh) {
+            break;
+          }
+          low = newLow;
+          high = newHigh;
+        } // if/else
+        i++;
+      } // while
+      keys[segments] = x0;
+      starts[segments] = start;
+      slopes[segments] = (low == Double.NEGATIVE_INFINITY) ? 0
+          : (high == Double.POSITIVE_INFINITY) ? low : (low + high) / 2;
+      segments++;
+      start = i;
+    } // while
+    this.segmentKeys = Arrays.copyOf(keys, segments);
+    this.segmentSlopes = Arrays.copyOf(slopes, segments);
+    this.segmentStarts = Arrays.copyOf(starts, segments);
+    this.stale = 0;
+  } // train(SkipList<K, V>)
+
+  /**
+   * Find the last live anchor whose key comes before key (or null, if there is none).
+   */
+  SLNode<K, V> start(K key) {
+    int m = this.anchors.length;
+    if (m == 0) {
+      return null;
+    } // if
+    int guess = predict(((Number) key).doubleValue());
+    int lo = Math.max(0, guess - EPSILON - 1);
+    int hi = Math.min(m - 1, guess + EPSILON + 1);
+    // the answer is the last slot before the first anchor that is not less than key
+    int pos;
+    if ((lo == 0 || before(lo, key)) && (hi == m - 1 || !before(hi + 1, key))) {
+      pos = lastBefore(lo, hi, key);
+    } else {
+      // the prediction was off (e.g., keys that are equal as doubles); search everything
+      pos = lastBefore(0, m - 1, key);
+    } // if/else
+    while (pos >= 0 && this.removed[pos]) {
+      pos--;
+    } // while
+    return (pos < 0) ? null : this.anchors[pos];
+  } // start(K)
+
+  /**
+   * Mark node as removed if it is one of the anchors.
+   */
+  void removed(SLNode<K, V> node) {
+    // (an index trained when no node was tall enough has no anchors to mark)
+    if (this.anchors.length == 0) {
+      return;
+    } // if
+    int guess = predict(((Number) node.key).doubleValue());
+    for (int i = Math.max(0, guess - EPSILON - 1); i < this.anchors.length
+        && i <= guess + EPSILON + 1; i++) {
+      if (this.anchors[i] == node) {
+        this.removed[i] = true;
+        return;
+      } // if
+    } // for
+    for (int i = 0; i < this.anchors.length; i++) {
+      if (this.anchors[i] == node) {
+        this.removed[i] = true;
+        return;
+      } // if
+    } // for
+  } // removed(SLNode<K, V>)
+
+  /**
+   * Determine if the index is stale enough that it should be retrained.
+   */
+  boolean needsTraining() {
+    return this.stale > this.anchors.length / 4 + 16;
+  } // needsTraining()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Predict the slot of a key.
+   */
+  int predict(double x) {
+    int seg = Arrays.binarySearch(this.segmentKeys, x);
+    if (seg < 0) {
+      seg = Math.max(0, -seg - 2);
+    } // if
+    double pos = this.segmentStarts[seg] + this.segmentSlopes[seg] * (x - this.segmentKeys[seg]);
+    return (int) Math.max(0, Math.min(this.anchors.length - 1, Math.round(pos)));
+  } // predict(double)
+
+  /**
+   * Determine if the anchor in slot i comes before key.
+   */
+  boolean before(int i, K key) {
+    return this.comparator.compare(this.anchors[i].key, key) < 0;
+  } // before(int, K)
+
+  /**
+   * Binary search slots lo..hi for the last one that comes before key (lo - 1 if none do).
+   */
+  int lastBefore(int lo, int hi, K key) {
+    int result = lo - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (before(mid, key)) {
+        result = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      } // if/else
+    } // while
+    return result;
+  } // lastBefore(int, int, K)
+
+} // class LearnedIndex<K, V>
@@ -0,0 +1,69 @@
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Compare get latency with and without a learned index, on uniform and on clustered keys.
+public class LearnedIndexBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in the list.
+   */
+  static final int SIZE = 500000;
+
+  /*
+   * The number of lookups we time (after the same number to warm up).
+   */
+  static final int LOOKUPS = 2000000;
+
+  static Random random = new Random(42);
+
+  public static void main(String[] args) {
+    Long[] uniform = new Long[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      uniform[i] = (long) random.nextInt(Integer.MAX_VALUE);
+    }
+    run("uniform", uniform);
+
+    // 20 tight clusters scattered over the key space
+    Long[] clustered = new Long[SIZE];
+    long[] centers = new long[20];
+    for (int c = 0; c < centers.length; c++) {
+      centers[c] = random.nextInt(Integer.MAX_VALUE);
+    }
+    for (int i = 0; i < SIZE; i++) {
+      long center = centers[random.nextInt(centers.length)];
+      clustered[i] = center + (long) (random.nextGaussian() * 50000);
+    }
+    run("clustered", clustered);
+  }
+
+  /*
+   * time lookups of keys in a list with and without the learned index
+   */
+  static void run(String name, Long[] keys) {
+    SkipList<Long, String> list = new SkipList<Long, String>((i, j) -> Long.compare(i, j));
+    for (Long key : keys) {
+      list.set(key, "hello");
+    }
+    time(name + ", plain", list, keys);
+    list.enableLearnedIndex();
+    time(name + ", learned", list, keys);
+  }
+
+  /*
+   * print the average nanoseconds and operation count of a get
+   */
+  static void time(String name, SkipList<Long, String> list, Long[] keys) {
+    for (int i = 0; i < LOOKUPS; i++) {
+      list.get(keys[random.nextInt(keys.length)]);
+    }
+    SkipList.operationCount = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      list.get(keys[random.nextInt(keys.length)]);
+    }
+    long elapsed = System.nanoTime() - start;
+    pen.println(name + ": " + elapsed / LOOKUPS + " ns/get, get counter = "
+        + SkipList.operationCount / LOOKUPS);
+  }
+}
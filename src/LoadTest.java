@@ -0,0 +1,458 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A YCSB-style load generator for our maps of Long keys. After loading the records, a number of
+ * threads run one of the YCSB core workloads (A to F) against the map for a fixed time, timing
+ * every operation. We print the throughput and the latency percentiles of each kind of operation
+ * as CSV, so that runs can be compared.
+ * 
+ * Usage: java LoadTest [--map locked|fair|combining|skiplist] [--workload A-F]
+ * [--distribution uniform|zipfian|latest] [--threads n] [--seconds s] [--warmup s]
+ * [--records n] [--csv file]
+ * 
+ * The plain skiplist is not safe to share, so it only runs with one thread. Scans read up from
+ * their start key, as in YCSB: through SkipList.values(K), or, on the locked and combining maps,
+ * through values(K, int), which copies only the values the scan reads, under the lock. Any other
+ * SimpleMap can run the workloads without scans, and run rejects a workload with scans on it
+ * before it loads anything.
+ */
+public class LoadTest {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The names of the kinds of operations, in the order of Workload's proportions.
+   */
+  static final String[] OPERATIONS = { "read", "update", "insert", "scan", "read-modify-write" };
+
+  /**
+   * The longest scan.
+   */
+  static final int MAX_SCAN = 100;
+
+  /**
+   * The Zipf exponent YCSB uses.
+   */
+  static final double THETA = 0.99;
+
+  /**
+   * The value we store (shared, so that we measure the map rather than the allocator).
+   */
+  static final String VALUE = "x".repeat(100);
+
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The map under test.
+   */
+  SimpleMap<Long, String> map;
+
+  /**
+   * The workload we run.
+   */
+  Workload workload;
+
+  /**
+   * How we pick the keys we read, update and scan: "uniform", "zipfian" or "latest".
+   */
+  String distribution;
+
+  /**
+   * The number of threads.
+   */
+  int threads = 1;
+
+  /**
+   * How long we measure, in seconds.
+   */
+  double seconds = 10;
+
+  /**
+   * How long we run before measuring, in seconds.
+   */
+  double warmup = 2;
+
+  /**
+   * The number of records we load before we start.
+   */
+  long records = 100000;
+
+  /**
+   * The number of records inserted so far (loaded ones included).
+   */
+  AtomicLong inserted = new AtomicLong();
+
+  /**
+   * The Zipf distribution over record numbers.
+   */
+  ZipfGenerator zipf;
+
+  /**
+   * The time the measured run took, in nanoseconds.
+   */
+  long elapsed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Get ready to run workload against map, picking keys from the workload's usual distribution.
+   */
+  public LoadTest(SimpleMap<Long, String> map, Workload workload) {
+    this.map = map;
+    this.workload = workload;
+    this.distribution = workload.distribution;
+  } // LoadTest(SimpleMap<Long, String>, Workload)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  public static void main(String[] args) throws Exception {
+    String mapName = "locked";
+    String csv = null;
+    LoadTest test = new LoadTest(null, Workload.A);
+    String distribution = null;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("no value for " + args[i]);
+      } // if
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--map":
+          mapName = value;
+          break;
+        case "--workload":
+          test.workload = Workload.valueOf(value.toUpperCase());
+          break;
+        case "--distribution":
+          distribution = value;
+          break;
+        case "--threads":
+          test.threads = Integer.parseInt(value);
+          break;
+        case "--seconds":
+          test.seconds = Double.parseDouble(value);
+          break;
+        case "--warmup":
+          test.warmup = Double.parseDouble(value);
+          break;
+        case "--records":
+          test.records = Long.parseLong(value);
+          break;
+        case "--csv":
+          csv = value;
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      } // switch
+    } // for
+    test.distribution = (distribution == null) ? test.workload.distribution : distribution;
+    test.map = newMap(mapName, test.threads);
+
+    LatencyHistogram[] results = test.run();
+    String header = "map,workload,distribution,threads,seconds,records,operation,count,"
+        + "ops/s,p50 us,p99 us,p99.9 us,max us";
+    pen.println(header);
+    StringBuilder rows = new StringBuilder();
+    for (int op = 0; op <= OPERATIONS.length; op++) {
+      LatencyHistogram histogram = (op < OPERATIONS.length) ? results[op] : total(results);
+      if (histogram.count() == 0) {
+        continue;
+      }
+      String row = mapName + "," + test.workload + "," + test.distribution + "," + test.threads
+          + "," + test.seconds + "," + test.records + ","
+          + ((op < OPERATIONS.length) ? OPERATIONS[op] : "total") + "," + histogram.count() + ","
+          + Math.round(histogram.count() / (test.elapsed / 1e9)) + ","
+          + micros(histogram.valueAtPercentile(50)) + ","
+          + micros(histogram.valueAtPercentile(99)) + ","
+          + micros(histogram.valueAtPercentile(99.9)) + "," + micros(histogram.max());
+      pen.println(row);
+      rows.append(row).append('\n');
+    } // for
+    if (csv != null) {
+      boolean fresh = !new java.io.File(csv).exists();
+      try (FileWriter out = new FileWriter(csv, true)) {
+        if (fresh) {
+          out.write(header + "\n");
+        }
+        out.write(rows.toString());
+      } // try
+    } // if
+  } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Load the records, warm up, then run the workload.
+   * 
+   * @return the latencies of each kind of operation, in the order of OPERATIONS.
+   */
+  public LatencyHistogram[] run() throws InterruptedException {
+    if (this.workload.proportions[3] > 0 && !canScan(this.map)) {
+      throw new IllegalArgumentException("workload " + this.workload + " scans, and a "
+          + this.map.getClass().getName() + " can't iterate from a key");
+    } // if
+    for (long id = 0; id < this.records; id++) {
+      this.map.set(scramble(id), VALUE);
+    } // for
+    this.inserted.set(this.records);
+    this.zipf = new ZipfGenerator(this.records, THETA);
+    if (this.warmup > 0) {
+      runFor(this.warmup);
+    } // if
+    long start = System.nanoTime();
+    LatencyHistogram[] results = runFor(this.seconds);
+    this.elapsed = System.nanoTime() - start;
+    return results;
+  } // run()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Run the workload on every thread for the given time.
+   */
+  LatencyHistogram[] runFor(double duration) throws InterruptedException {
+    long deadline = System.nanoTime() + (long) (duration * 1e9);
+    LatencyHistogram[][] perThread = new LatencyHistogram[this.threads][];
+    Thread[] workers = new Thread[this.threads];
+    for (int t = 0; t < this.threads; t++) {
+      int thread = t;
+      workers[t] =
+          new Thread(() -> perThread[thread] = work(deadline, new SplittableRandom(thread)));
+      workers[t].start();
+    } // for
+    LatencyHistogram[] results = new LatencyHistogram[OPERATIONS.length];
+    for (int op = 0; op < OPERATIONS.length; op++) {
+      results[op] = new LatencyHistogram();
+    } // for
+    for (int t = 0; t < this.threads; t++) {
+      workers[t].join();
+      for (int op = 0; op < OPERATIONS.length; op++) {
+        results[op].add(perThread[t][op]);
+      } // for
+    } // for
+    return results;
+  } // runFor(double)
+
+  /**
+   * Run operations until the deadline, recording how long each one takes.
+   */
+  LatencyHistogram[] work(long deadline, SplittableRandom random) {
+    LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+    for (int op = 0; op < OPERATIONS.length; op++) {
+      histograms[op] = new LatencyHistogram();
+    } // for
+    long now = System.nanoTime();
+    while (now < deadline) {
+      int op = this.workload.pick(random.nextDouble());
+      long start = now;
+      switch (op) {
+        case 0:
+          read(pickKey(random));
+          break;
+        case 1:
+          this.map.set(pickKey(random), VALUE);
+          break;
+        case 2:
+          this.map.set(scramble(this.inserted.getAndIncrement()), VALUE);
+          break;
+        case 3:
+          scan(pickKey(random), 1 + random.nextInt(MAX_SCAN));
+          break;
+        default:
+          Long key = pickKey(random);
+          read(key);
+          this.map.set(key, VALUE);
+      } // switch
+      now = System.nanoTime();
+      histograms[op].record(now - start);
+    } // while
+    return histograms;
+  } // work(long, SplittableRandom)
+
+  /**
+   * Pick the key of an existing record.
+   */
+  Long pickKey(SplittableRandom random) {
+    long count = this.inserted.get();
+    long id;
+    switch (this.distribution) {
+      case "uniform":
+        id = random.nextLong(count);
+        break;
+      case "zipfian":
+        id = Math.min(this.zipf.next(random), count - 1);
+        break;
+      case "latest":
+        id = Math.max(count - 1 - this.zipf.next(random), 0);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown distribution " + this.distribution);
+    } // switch
+    return scramble(id);
+  } // pickKey(SplittableRandom)
+
+  /**
+   * Read a key, which may not have been inserted yet if its insert is still under way.
+   */
+  String read(Long key) {
+    try {
+      return this.map.get(key);
+    } catch (IndexOutOfBoundsException e) {
+      return null;
+    } // try/catch
+  } // read(Long)
+
+  /**
+   * Read up to length values, starting at key and going up, as YCSB's scans do.
+   * 
+   * @throws UnsupportedOperationException if the map can't iterate from a key.
+   */
+  @SuppressWarnings("unchecked")
+  int scan(Long key, int length) {
+    Iterator<String> values;
+    if (this.map instanceof SkipList) {
+      values = ((SkipList<Long, String>) this.map).values(key);
+    } else if (this.map instanceof LockedMap) {
+      values = ((LockedMap<Long, String>) this.map).values(key, length);
+    } else if (this.map instanceof FlatCombiningMap) {
+      values = ((FlatCombiningMap<Long, String>) this.map).values(key, length);
+    } else {
+      throw new UnsupportedOperationException("can't scan a " + this.map.getClass().getName());
+    } // if/else
+    int count = 0;
+    while (count < length && values.hasNext()) {
+      values.next();
+      count++;
+    } // while
+    return count;
+  } // scan(Long, int)
+
+  /**
+   * Determine whether scan can iterate over map from a key.
+   */
+  static boolean canScan(SimpleMap<?, ?> map) {
+    return map instanceof SkipList || map instanceof FlatCombiningMap
+        || (map instanceof LockedMap && ((LockedMap<?, ?>) map).map instanceof SkipList);
+  } // canScan(SimpleMap<?, ?>)
+
+  /**
+   * Build the map named on the command line.
+   */
+  static SimpleMap<Long, String> newMap(String name, int threads) {
+    switch (name) {
+      case "skiplist":
+        if (threads != 1) {
+          throw new IllegalArgumentException("a plain skiplist only runs with one thread");
+        }
+        return new SkipList<Long, String>((i, j) -> Long.compare(i, j));
+      case "locked":
+        return new LockedMap<Long, String>(
+            new SkipList<Long, String>((i, j) -> Long.compare(i, j)));
+      case "fair":
+        return new LockedMap<Long, String>(new SkipList<Long, String>((i, j) -> Long.compare(i, j)),
+            new ReentrantLock(true));
+      case "combining":
+        return new FlatCombiningMap<Long, String>(
+            new SkipList<Long, String>((i, j) -> Long.compare(i, j)));
+      default:
+        throw new IllegalArgumentException(
+            "unknown map " + name + " (use locked, fair, combining or skiplist)");
+    } // switch
+  } // newMap(String, int)
+
+  /**
+   * Turn a record number into a key, spreading neighbouring records over the key space (the
+   * SplitMix64 finalizer, which never maps two numbers to the same key).
+   */
+  static Long scramble(long id) {
+    long z = id + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  } // scramble(long)
+
+  /**
+   * Merge every histogram in histograms.
+   */
+  static LatencyHistogram total(LatencyHistogram[] histograms) {
+    LatencyHistogram result = new LatencyHistogram();
+    for (LatencyHistogram histogram : histograms) {
+      result.add(histogram);
+    } // for
+    return result;
+  } // total(LatencyHistogram[])
+
+  /**
+   * Format nanoseconds as microseconds.
+   */
+  static String micros(long nanos) {
+    return String.format("%.1f", nanos / 1000.0);
+  } // micros(long)
+
+} // class LoadTest
+
+
+/**
+ * Zipf-distributed numbers in [0, n), with 0 the most likely, using the method of Gray et al.
+ * ("Quickly generating billion-record synthetic databases"), as YCSB does.
+ */
+class ZipfGenerator {
+  final long n;
+  final double theta;
+  final double zetan;
+  final double alpha;
+  final double eta;
+
+  ZipfGenerator(long n, double theta) {
+    this.n = n;
+    this.theta = theta;
+    this.zetan = zeta(n, theta);
+    this.alpha = 1 / (1 - theta);
+    this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / this.zetan);
+  } // ZipfGenerator(long, double)
+
+  /**
+   * Pick a number.
+   */
+  long next(SplittableRandom random) {
+    double u = random.nextDouble();
+    double uz = u * this.zetan;
+    if (uz < 1) {
+      return 0;
+    } else if (uz < 1 + Math.pow(0.5, this.theta)) {
+      return 1;
+    } // if/else
+    long result = (long) (this.n * Math.pow(this.eta * u - this.eta + 1, this.alpha));
+    return Math.min(result, this.n - 1);
+  } // next(SplittableRandom)
+
+  /**
+   * The sum of 1 / i^theta for i from 1 to n.
+   */
+  static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    } // for
+    return sum;
+  } // zeta(long, double)
+} // class ZipfGenerator
@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+
+/**
+ * A SimpleMap that can be shared between threads, because every call holds a lock while it uses
+ * the underlying map. The iterators work on a copy of the keys or values, taken under the lock.
+ */
+public class LockedMap<K, V> implements SimpleMap<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The map we protect.
+   */
+  SimpleMap<K, V> map;
+
+  /**
+   * The lock we hold (or null, to use the monitor of this object).
+   */
+  Lock lock;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Protect map with a plain synchronized block.
+   */
+  public LockedMap(SimpleMap<K, V> map) {
+    this(map, null);
+  } // LockedMap(SimpleMap<K, V>)
+
+  /**
+   * Protect map with lock.
+   */
+  public LockedMap(SimpleMap<K, V> map, Lock lock) {
+    this.map = map;
+    this.lock = lock;
+  } // LockedMap(SimpleMap<K, V>, Lock)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    if (this.lock == null) {
+      synchronized (this) {
+        return this.map.set(key, value);
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return this.map.set(key, value);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    if (this.lock == null) {
+      synchronized (this) {
+        return this.map.get(key);
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return this.map.get(key);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // get(K)
+
+  @Override
+  public int size() {
+    if (this.lock == null) {
+      synchronized (this) {
+        return this.map.size();
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return this.map.size();
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    if (this.lock == null) {
+      synchronized (this) {
+        return this.map.containsKey(key);
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return this.map.containsKey(key);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    if (this.lock == null) {
+      synchronized (this) {
+        return this.map.remove(key);
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return this.map.remove(key);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    ArrayList<K> copy = new ArrayList<K>();
+    forEach((key, value) -> copy.add(key));
+    return copy.iterator();
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    ArrayList<V> copy = new ArrayList<V>();
+    forEach((key, value) -> copy.add(value));
+    return copy.iterator();
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (this.lock == null) {
+      synchronized (this) {
+        this.map.forEach(action);
+        return;
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      this.map.forEach(action);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // forEach(BiConsumer)
+
+  // +---------------+-----------------------------------------------
+  // | Other methods |
+  // +---------------+
+
+  /**
+   * Get an iterator for the values of up to limit keys greater than or equal to fromKey, from
+   * smallest key to largest. Like the other iterators, it works on a copy, but we only copy the
+   * values it will return.
+   * 
+   * @throws UnsupportedOperationException if the underlying map is not a SkipList.
+   */
+  public Iterator<V> values(K fromKey, int limit) {
+    if (!(this.map instanceof SkipList)) {
+      throw new UnsupportedOperationException("only a SkipList can iterate from a key");
+    } // if
+    if (this.lock == null) {
+      synchronized (this) {
+        return copyValues(fromKey, limit).iterator();
+      } // synchronized
+    } // if
+    this.lock.lock();
+    try {
+      return copyValues(fromKey, limit).iterator();
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // values(K, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Copy the values of up to limit keys greater than or equal to fromKey. Must hold the lock.
+   */
+  @SuppressWarnings("unchecked")
+  ArrayList<V> copyValues(K fromKey, int limit) {
+    ArrayList<V> copy = new ArrayList<V>();
+    Iterator<V> values = ((SkipList<K, V>) this.map).values(fromKey);
+    while (copy.size() < limit && values.hasNext()) {
+      copy.add(values.next());
+    } // while
+    return copy;
+  } // copyValues(K, int)
+
+} // class LockedMap<K, V>
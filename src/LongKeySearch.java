@@ -0,0 +1,27 @@
+/**
+ * A way to search the sorted keys of a block.
+ */
+interface LongKeySearch {
+  /**
+   * Count the keys among the first count of keys that are less than key. The keys past count are
+   * all Long.MAX_VALUE, up to the length of keys.
+   */
+  int countLess(long[] keys, int count, long key);
+
+  /**
+   * Binary search.
+   */
+  LongKeySearch BINARY = (keys, count, key) -> {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return lo;
+  };
+} // interface LongKeySearch
@@ -0,0 +1,475 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list of long keys whose bottom level holds blocks of up to BLOCK keys in sorted arrays,
+ * instead of one key per node. The upper levels link the blocks by their first key, so a search
+ * hops between blocks until it reaches the one that may hold the key, and then searches inside
+ * that block's array without following any more pointers.
+ *
+ * The search inside a block uses the Vector API (comparing 4 or 8 keys per instruction, counting
+ * the keys less than the one we want) when the jdk.incubator.vector module is present and
+ * LongVectorSearch (in the vector source folder, outside the default build) has been compiled,
+ * and a binary search otherwise. To get the vector search, compile vector/*.java along with src
+ * and compile and run with --add-modules jdk.incubator.vector.
+ *
+ * Blocks split in two when they fill up, and are unlinked when they become empty (they are not
+ * merged when they only get sparse).
+ */
+public class LongSkipList<V> implements SimpleMap<Long, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The maximum height of a block.
+   */
+  static final int MAX_HEIGHT = 16;
+
+  /**
+   * The number of keys a block holds. (A multiple of the number of longs in any vector.)
+   */
+  static final int BLOCK = 32;
+
+  /**
+   * The name of the vector search class. It is in the separate vector/ source folder, so we can't
+   * refer to it directly.
+   */
+  static final String VECTOR_SEARCH = "LongVectorSearch";
+
+  /**
+   * The search we use inside blocks, unless told otherwise.
+   */
+  static final LongKeySearch SEARCH = defaultSearch();
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  static Random rand = new Random();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The search inside blocks.
+   */
+  LongKeySearch search;
+
+  /**
+   * The block before the first block (which holds no keys).
+   */
+  LSLBlock<V> head = new LSLBlock<V>(MAX_HEIGHT);
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The height of the tallest block.
+   */
+  int height;
+
+  /**
+   * The last block at each level whose first key is not greater than the key passed to the last
+   * call to findBlock.
+   */
+  LSLBlock<V>[] update = newBlockArray(MAX_HEIGHT);
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty list.
+   */
+  public LongSkipList() {
+    this(SEARCH);
+  } // LongSkipList()
+
+  /**
+   * Create a new, empty list that searches blocks with search.
+   */
+  LongSkipList(LongKeySearch search) {
+    this.search = search;
+  } // LongSkipList(LongKeySearch)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(Long key, V value) {
+    return set(unbox(key), value);
+  } // set(Long, V)
+
+  @Override
+  public V get(Long key) {
+    return get(unbox(key));
+  } // get(Long)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Long key) {
+    return key != null && containsKey(key.longValue());
+  } // containsKey(Long)
+
+  @Override
+  public V remove(Long key) {
+    return remove(unbox(key));
+  } // remove(Long)
+
+  @Override
+  public Iterator<Long> keys() {
+    return new Iterator<Long>() {
+      LSLBlock<V> block = LongSkipList.this.head.next[0];
+      int pos = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.block != null;
+      } // hasNext()
+
+      @Override
+      public Long next() {
+        if (this.block == null) {
+          throw new IllegalStateException();
+        }
+        long key = this.block.keys[this.pos++];
+        if (this.pos == this.block.count) {
+          this.block = this.block.next[0];
+          this.pos = 0;
+        }
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      LSLBlock<V> block = LongSkipList.this.head.next[0];
+      int pos = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.block != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.block == null) {
+          throw new IllegalStateException();
+        }
+        V value = this.block.value(this.pos++);
+        if (this.pos == this.block.count) {
+          this.block = this.block.next[0];
+          this.pos = 0;
+        }
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Long, ? super V> action) {
+    for (LSLBlock<V> block = this.head.next[0]; block != null; block = block.next[0]) {
+      for (int i = 0; i < block.count; i++) {
+        action.accept(block.keys[i], block.value(i));
+      } // for
+    } // for
+  } // forEach(BiConsumer)
+
+  // +----------------------------+------------------------------------
+  // | Methods on primitive keys |
+  // +----------------------------+
+
+  /**
+   * Set the value associated with key, returning the previous value (or null).
+   */
+  public V set(long key, V value) {
+    LSLBlock<V> block = findBlock(key);
+    if (block == this.head) {
+      // the key comes before every block, so it goes at the front of the first one
+      block = this.head.next[0];
+      if (block == null) {
+        block = new LSLBlock<V>(randomHeight());
+        link(block, this.head);
+      }
+    }
+    int pos = this.search.countLess(block.keys, block.count, key);
+    if (pos < block.count && block.keys[pos] == key) {
+      V old = block.value(pos);
+      block.values[pos] = value;
+      return old;
+    }
+    if (block.count == BLOCK) {
+      // move the upper half into a new block right after this one
+      LSLBlock<V> upper = block.split(randomHeight());
+      link(upper, block);
+      if (pos > BLOCK / 2) {
+        block = upper;
+        pos -= BLOCK / 2;
+      }
+    }
+    block.insert(pos, key, value);
+    this.size++;
+    return null;
+  } // set(long, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the map.
+   */
+  public V get(long key) {
+    LSLBlock<V> block = findBlock(key);
+    int pos = (block == this.head) ? 0 : this.search.countLess(block.keys, block.count, key);
+    if (block == this.head || pos == block.count || block.keys[pos] != key) {
+      throw new IndexOutOfBoundsException("The key was not found.");
+    }
+    return block.value(pos);
+  } // get(long)
+
+  /**
+   * Determine if key appears in the list.
+   */
+  public boolean containsKey(long key) {
+    LSLBlock<V> block = findBlock(key);
+    if (block == this.head) {
+      return false;
+    }
+    int pos = this.search.countLess(block.keys, block.count, key);
+    return pos < block.count && block.keys[pos] == key;
+  } // containsKey(long)
+
+  /**
+   * Remove the value with the given key, returning it (or null, if there is none).
+   */
+  public V remove(long key) {
+    LSLBlock<V> block = findBlock(key);
+    if (block == this.head) {
+      return null;
+    }
+    int pos = this.search.countLess(block.keys, block.count, key);
+    if (pos == block.count || block.keys[pos] != key) {
+      return null;
+    }
+    long first = block.keys[0];
+    V old = block.delete(pos);
+    this.size--;
+    if (block.count == 0) {
+      unlink(block, first);
+    }
+    return old;
+  } // remove(long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the last block whose first key is not greater than key (or the head, if there is none),
+   * filling in update.
+   */
+  LSLBlock<V> findBlock(long key) {
+    LSLBlock<V> temp = this.head;
+    for (int level = this.height - 1; level >= 0; level--) {
+      LSLBlock<V> next;
+      while ((next = temp.next[level]) != null && next.keys[0] <= key) {
+        temp = next;
+      } // while
+      this.update[level] = temp;
+    } // for
+    return temp;
+  } // findBlock(long)
+
+  /**
+   * Link block into the list right after pred, which is the last block before it at level 0.
+   * The update array must hold the last block at each level above pred's height that comes
+   * before block.
+   */
+  void link(LSLBlock<V> block, LSLBlock<V> pred) {
+    int h = block.next.length;
+    for (int i = this.height; i < h; i++) {
+      this.update[i] = this.head;
+    } // for
+    this.height = Math.max(this.height, h);
+    for (int i = 0; i < h; i++) {
+      LSLBlock<V> before = (i < pred.next.length) ? pred : this.update[i];
+      block.next[i] = before.next[i];
+      before.next[i] = block;
+    } // for
+  } // link(LSLBlock<V>, LSLBlock<V>)
+
+  /**
+   * Unlink an empty block whose first key was first.
+   */
+  void unlink(LSLBlock<V> block, long first) {
+    LSLBlock<V> temp = this.head;
+    for (int level = this.height - 1; level >= 0; level--) {
+      LSLBlock<V> next;
+      while ((next = temp.next[level]) != null && next != block && next.keys[0] < first) {
+        temp = next;
+      } // while
+      if (next == block) {
+        temp.next[level] = block.next[level];
+      }
+    } // for
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+  } // unlink(LSLBlock<V>, long)
+
+  /**
+   * Get the value of a key.
+   *
+   * @throws NullPointerException if the key is null.
+   */
+  static long unbox(Long key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    }
+    return key;
+  } // unbox(Long)
+
+  /**
+   * Pick a random height for a new block.
+   */
+  static int randomHeight() {
+    int result = 1;
+    while (result < MAX_HEIGHT && rand.nextBoolean()) {
+      result++;
+    } // while
+    return result;
+  } // randomHeight()
+
+  /**
+   * Make an array of n block references.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> LSLBlock<V>[] newBlockArray(int n) {
+    return (LSLBlock<V>[]) new LSLBlock<?>[n];
+  } // newBlockArray(int)
+
+  /**
+   * Use the vector search if the module is there and the class was compiled (see
+   * LongVectorSearch), and binary search otherwise.
+   */
+  static LongKeySearch defaultSearch() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (LongKeySearch) Class.forName(VECTOR_SEARCH).getDeclaredConstructor()
+            .newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // fall through to the scalar search
+      } // try/catch
+    } // if
+    return LongKeySearch.BINARY;
+  } // defaultSearch()
+
+} // class LongSkipList<V>
+
+
+/**
+ * Blocks in a LongSkipList.
+ */
+class LSLBlock<V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The keys, in order (and Long.MAX_VALUE past count).
+   */
+  long[] keys = new long[LongSkipList.BLOCK];
+
+  /**
+   * The value of each key.
+   */
+  Object[] values = new Object[LongSkipList.BLOCK];
+
+  /**
+   * The number of keys in the block.
+   */
+  int count;
+
+  /**
+   * Pointers to the next blocks.
+   */
+  LSLBlock<V>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty block of height n.
+   */
+  LSLBlock(int n) {
+    Arrays.fill(this.keys, Long.MAX_VALUE);
+    this.next = LongSkipList.newBlockArray(n);
+  } // LSLBlock(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the value at position pos.
+   */
+  @SuppressWarnings("unchecked")
+  V value(int pos) {
+    return (V) this.values[pos];
+  } // value(int)
+
+  /**
+   * Put a key and value at position pos, moving the later ones up. The block must not be full.
+   */
+  void insert(int pos, long key, V value) {
+    System.arraycopy(this.keys, pos, this.keys, pos + 1, this.count - pos);
+    System.arraycopy(this.values, pos, this.values, pos + 1, this.count - pos);
+    this.keys[pos] = key;
+    this.values[pos] = value;
+    this.count++;
+  } // insert(int, long, V)
+
+  /**
+   * Take out the key and value at position pos, moving the later ones down, and return the
+   * value.
+   */
+  V delete(int pos) {
+    V old = value(pos);
+    this.count--;
+    System.arraycopy(this.keys, pos + 1, this.keys, pos, this.count - pos);
+    System.arraycopy(this.values, pos + 1, this.values, pos, this.count - pos);
+    this.keys[this.count] = Long.MAX_VALUE;
+    this.values[this.count] = null;
+    return old;
+  } // delete(int)
+
+  /**
+   * Move the upper half of this (full) block into a new block of height n, and return it.
+   */
+  LSLBlock<V> split(int n) {
+    LSLBlock<V> upper = new LSLBlock<V>(n);
+    int half = LongSkipList.BLOCK / 2;
+    System.arraycopy(this.keys, half, upper.keys, 0, half);
+    System.arraycopy(this.values, half, upper.values, 0, half);
+    Arrays.fill(this.keys, half, LongSkipList.BLOCK, Long.MAX_VALUE);
+    Arrays.fill(this.values, half, LongSkipList.BLOCK, null);
+    upper.count = half;
+    this.count = half;
+    return upper;
+  } // split(int)
+} // LSLBlock<V>
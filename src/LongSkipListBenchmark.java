@@ -0,0 +1,80 @@
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Compare lookup throughput of SkipList<Long, V> with LongSkipList, searching its blocks with
+// binary search and (when run with --add-modules jdk.incubator.vector) with the Vector API.
+public class LongSkipListBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in each list.
+   */
+  static final int SIZE = 1000000;
+
+  /*
+   * The number of lookups we time (after the same number to warm up).
+   */
+  static final int LOOKUPS = 5000000;
+
+  public static void main(String[] args) {
+    Random random = new Random(42);
+    long[] keys = new long[SIZE];
+    Long[] boxed = new Long[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      keys[i] = random.nextLong();
+      boxed[i] = keys[i];
+    }
+    // look the keys up in random order, the same for every list
+    int[] order = new int[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      order[i] = random.nextInt(SIZE);
+    }
+
+    SkipList<Long, String> plain = new SkipList<Long, String>((i, j) -> Long.compare(i, j));
+    for (Long key : boxed) {
+      plain.set(key, "hello");
+    }
+    long start = 0;
+    for (int round = 0; round < 2; round++) {
+      start = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        plain.get(boxed[order[i]]);
+      }
+    }
+    report("SkipList<Long, V>", System.nanoTime() - start);
+    plain = null;
+
+    run("LongSkipList, binary search", new LongSkipList<String>(LongKeySearch.BINARY), keys, order);
+    if (LongSkipList.SEARCH != LongKeySearch.BINARY) {
+      run("LongSkipList, vector search", new LongSkipList<String>(LongSkipList.SEARCH), keys,
+          order);
+    } else {
+      pen.println("(no vector search: run with --add-modules jdk.incubator.vector)");
+    }
+  }
+
+  /*
+   * fill list with keys and time the lookups
+   */
+  static void run(String name, LongSkipList<String> list, long[] keys, int[] order) {
+    for (long key : keys) {
+      list.set(key, "hello");
+    }
+    long start = 0;
+    for (int round = 0; round < 2; round++) {
+      start = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        list.get(keys[order[i]]);
+      }
+    }
+    report(name, System.nanoTime() - start);
+  }
+
+  /*
+   * print the time per lookup and the lookups per second
+   */
+  static void report(String name, long nanos) {
+    pen.printf("%-30s %5d ns/get %6.2f M gets/s%n", name, nanos / LOOKUPS,
+        LOOKUPS * 1000.0 / nanos);
+  }
+}
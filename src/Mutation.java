@@ -0,0 +1,66 @@
+/**
+ * A change to a SkipList, as delivered to a ChangeSubscription.
+ */
+public class Mutation<K, V> {
+
+  /**
+   * The kinds of change.
+   */
+  public enum Kind {
+    /** key now has value (and used to have oldValue, or nothing if oldValue is null). */
+    SET,
+    /** key, which had value, is gone. */
+    REMOVE
+  } // enum Kind
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The position of this change among all the changes to the list (starting at 1).
+   */
+  public final long sequence;
+
+  /**
+   * The kind of change.
+   */
+  public final Kind kind;
+
+  /**
+   * The key that changed.
+   */
+  public final K key;
+
+  /**
+   * The new value (for SET) or the removed value (for REMOVE).
+   */
+  public final V value;
+
+  /**
+   * The value that SET replaced (or null).
+   */
+  public final V oldValue;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  public Mutation(long sequence, Kind kind, K key, V value, V oldValue) {
+    this.sequence = sequence;
+    this.kind = kind;
+    this.key = key;
+    this.value = value;
+    this.oldValue = oldValue;
+  } // Mutation(long, Kind, K, V, V)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  @Override
+  public String toString() {
+    return "#" + this.sequence + " " + this.kind + " " + this.key + " " + this.value;
+  } // toString()
+
+} // class Mutation<K, V>
@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+/**
+ * Free lists of unused skip list nodes, one for each height, so that a list with a lot of churn
+ * can reuse the nodes that remove unlinks instead of allocating new ones. Each free list holds at
+ * most capacity nodes, and the nodes in it hold no references.
+ */
+class NodePool<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * free[h] holds the unused nodes of height h (or is null, if we have never had one).
+   */
+  SLNode<K, V>[][] free;
+
+  /**
+   * counts[h] is the number of nodes in free[h].
+   */
+  int[] counts;
+
+  /**
+   * The most nodes we keep of each height.
+   */
+  int capacity;
+
+  /**
+   * The number of nodes we have handed out again, and the number we had no room for.
+   */
+  long reused;
+  long dropped;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a pool that keeps up to capacity nodes of each height.
+   */
+  @SuppressWarnings("unchecked")
+  NodePool(int capacity) {
+    this.free = (SLNode<K, V>[][]) new SLNode<?, ?>[SkipList.INITIAL_HEIGHT + 1][];
+    this.counts = new int[SkipList.INITIAL_HEIGHT + 1];
+    this.capacity = capacity;
+  } // NodePool(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get an unused node of the given height holding key and value (or null, if there are none).
+   */
+  SLNode<K, V> take(K key, V value, int height) {
+    if (this.counts[height] == 0) {
+      return null;
+    } // if
+    SLNode<K, V> node = this.free[height][--this.counts[height]];
+    this.free[height][this.counts[height]] = null;
+    node.key = key;
+    node.value = value;
+    this.reused++;
+    return node;
+  } // take(K, V, int)
+
+  /**
+   * Keep a node that has been unlinked from its list, if there is room, after clearing its
+   * references (so that the pool doesn't keep keys, values or other nodes alive).
+   */
+  void release(SLNode<K, V> node) {
+    int height = node.getHeight();
+    if (this.counts[height] == this.capacity) {
+      this.dropped++;
+      return;
+    } // if
+    if (this.free[height] == null) {
+      this.free[height] = SkipList.newNodeArray(this.capacity);
+    } // if
+    node.key = null;
+    node.value = null;
+    node.prev = null;
+    Arrays.fill(node.next, null);
+    node.deleted = false;
+    this.free[height][this.counts[height]++] = node;
+  } // release(SLNode<K, V>)
+
+  /**
+   * Get the number of nodes in the pool.
+   */
+  int size() {
+    int total = 0;
+    for (int count : this.counts) {
+      total += count;
+    } // for
+    return total;
+  } // size()
+} // class NodePool<K, V>
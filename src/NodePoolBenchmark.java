@@ -0,0 +1,94 @@
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+// Measure the allocation rate and GC time of a rolling window (one set and one remove per event)
+// with and without a node pool.
+public class NodePoolBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of entries in the window.
+   */
+  static final int SIZE = 1000000;
+
+  /*
+   * The number of events we measure for each configuration.
+   */
+  static final int EVENTS = 20000000;
+
+  /*
+   * The number of nodes of each height the pool keeps.
+   */
+  static final int POOL = 1024;
+
+  /*
+   * Keys, boxed ahead of time so that boxing doesn't show up in the measurements. The window is
+   * the SIZE keys that come before the next one we add, wrapping around.
+   */
+  static Integer[] keys = new Integer[2 * SIZE];
+
+  public static void main(String[] args) {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    // run everything once to warm up, then again to measure
+    for (int round = 0; round < 2; round++) {
+      measure("no pool", round == 1, 0);
+      measure("pool of " + POOL, round == 1, POOL);
+    }
+  }
+
+  /*
+   * slide the window EVENTS times and print the bytes allocated per event, the GC time and the
+   * time per event
+   */
+  static void measure(String name, boolean report, int pool) {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> Integer.compare(i, j));
+    list.setNodePool(pool);
+    for (int i = 0; i < SIZE; i++) {
+      list.set(keys[i], "hello");
+    }
+    System.gc();
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long bytes = threads.getThreadAllocatedBytes(thread);
+    long collections = collections();
+    long gcMillis = gcMillis();
+    long start = System.nanoTime();
+    for (int i = 0; i < EVENTS; i++) {
+      list.set(keys[(i + SIZE) % keys.length], "hello");
+      list.remove(keys[i % keys.length]);
+    }
+    long nanos = System.nanoTime() - start;
+    if (report) {
+      pen.printf("%-14s %6.1f B/event %5d GCs %6d ms in GC %6.1f ns/event%n", name,
+          (threads.getThreadAllocatedBytes(thread) - bytes) / (double) EVENTS,
+          collections() - collections, gcMillis() - gcMillis, nanos / (double) EVENTS);
+    }
+  }
+
+  /*
+   * the number of collections so far
+   */
+  static long collections() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += gc.getCollectionCount();
+    }
+    return total;
+  }
+
+  /*
+   * the time spent collecting so far
+   */
+  static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += gc.getCollectionTime();
+    }
+    return total;
+  }
+}
@@ -0,0 +1,93 @@
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Measure how fast a ReplicationFollower keeps up with a busy leader over loopback TCP.
+public class ReplicationBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of distinct keys.
+   */
+  static final int KEYS = 100000;
+
+  /*
+   * The number of changes we replicate (after the same number to warm up).
+   */
+  static final int CHANGES = 2000000;
+
+  public static void main(String[] args) throws Exception {
+    for (int round = 0; round < 2; round++) {
+      boolean report = round == 1;
+      long alone = write(new SkipList<Integer, String>((i, j) -> i - j), new Random(42));
+      if (report) {
+        pen.println("without replication: " + rate(alone) + " changes/s");
+      }
+      for (int capacity : new int[] { 1024, 65536 }) {
+        replicate(capacity, report);
+      }
+    }
+  }
+
+  /*
+   * replicate CHANGES changes through a buffer of the given capacity
+   */
+  static void replicate(int capacity, boolean report) throws Exception {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> i - j);
+    SkipList<Integer, String> copy = new SkipList<Integer, String>((i, j) -> i - j);
+    try (ReplicationFollower<Integer, String> follower =
+        new ReplicationFollower<Integer, String>(copy, Codec.INTEGER, Codec.STRING, 0);
+        ReplicationLeader<Integer, String> leader = new ReplicationLeader<Integer, String>(list,
+            Codec.INTEGER, Codec.STRING, "localhost", follower.port(), capacity)) {
+      // watch the lag while we write
+      long[] worst = new long[2];
+      Thread watcher = new Thread(() -> {
+        while (!Thread.currentThread().isInterrupted()) {
+          worst[0] = Math.max(worst[0], leader.lagMutations());
+          worst[1] = Math.max(worst[1], leader.lagNanos());
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      });
+      watcher.start();
+      long start = System.nanoTime();
+      long written = write(list, new Random(42));
+      leader.awaitCaughtUp(1, TimeUnit.MINUTES);
+      long elapsed = System.nanoTime() - start;
+      watcher.interrupt();
+      watcher.join();
+      if (report) {
+        pen.println("buffer " + capacity + ": writes " + rate(written) + " changes/s, replicated "
+            + rate(elapsed) + " changes/s, " + CHANGES / Math.max(leader.frames(), 1)
+            + " changes/frame, worst lag " + worst[0] + " changes / " + worst[1] / 1000
+            + " us");
+      }
+    }
+  }
+
+  /*
+   * make CHANGES random sets and removes, returning the time it took
+   */
+  static long write(SkipList<Integer, String> list, Random random) {
+    long start = System.nanoTime();
+    for (int i = 0; i < CHANGES; i++) {
+      int key = random.nextInt(KEYS);
+      if (random.nextInt(4) == 0) {
+        list.remove(key);
+      } else {
+        list.set(key, "value");
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  /*
+   * changes per second, for CHANGES changes in the given time
+   */
+  static long rate(long nanos) {
+    return Math.round(CHANGES / (nanos / 1e9));
+  }
+}
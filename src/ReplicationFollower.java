@@ -0,0 +1,174 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.function.Function;
+
+/**
+ * Keeps a SkipList up to date with the changes a ReplicationLeader sends it (see there for the
+ * format). The follower listens on the loopback interface, takes one leader, and applies each
+ * frame it receives as a whole before acknowledging it.
+ * 
+ * The list is changed on the follower's own thread, so other threads should only look at it
+ * through read.
+ */
+public class ReplicationFollower<K, V> implements Closeable {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The copy we keep up to date.
+   */
+  SkipList<K, V> replica;
+
+  /**
+   * How to read keys and values.
+   */
+  Codec<K> keyCodec;
+  Codec<V> valueCodec;
+
+  /**
+   * Where we wait for the leader, and our connection to it.
+   */
+  ServerSocket server;
+  Socket socket;
+
+  /**
+   * The sequence number of the last change applied.
+   */
+  volatile long applied;
+
+  /**
+   * What went wrong with the connection (or null).
+   */
+  volatile IOException failure;
+
+  volatile boolean closed;
+
+  Thread thread;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start listening for a leader on the given port (0 for any free port), applying its changes to
+   * replica.
+   */
+  public ReplicationFollower(SkipList<K, V> replica, Codec<K> keyCodec, Codec<V> valueCodec,
+      int port) throws IOException {
+    this.replica = replica;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+    this.thread = new Thread(this::run, "replication follower");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  } // ReplicationFollower(SkipList<K, V>, Codec<K>, Codec<V>, int)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Run a follower of String keys and values as a process of its own, reporting its progress
+   * every second. Usage: java ReplicationFollower port
+   */
+  public static void main(String[] args) throws Exception {
+    ReplicationFollower<String, String> follower =
+        new ReplicationFollower<String, String>(new SkipList<String, String>(String::compareTo),
+            Codec.STRING, Codec.STRING, Integer.parseInt(args[0]));
+    while (follower.failure == null) {
+      Thread.sleep(1000);
+      System.out.println("applied " + follower.applied() + ", size "
+          + follower.read((list) -> list.size()));
+    } // while
+    throw follower.failure;
+  } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the port we listen on.
+   */
+  public int port() {
+    return this.server.getLocalPort();
+  } // port()
+
+  /**
+   * Get the sequence number of the last change applied.
+   */
+  public long applied() {
+    return this.applied;
+  } // applied()
+
+  /**
+   * Look at the replica (between frames).
+   */
+  public synchronized <R> R read(Function<? super SkipList<K, V>, R> reader) {
+    return reader.apply(this.replica);
+  } // read(Function)
+
+  /**
+   * Stop following and close the connection.
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.server.close();
+    if (this.socket != null) {
+      this.socket.close();
+    } // if
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Accept the leader, then apply its frames.
+   */
+  void run() {
+    try {
+      this.socket = this.server.accept();
+      this.socket.setTcpNoDelay(true);
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), 1 << 16));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+      while (!this.closed) {
+        int count = in.readInt();
+        long last = 0;
+        synchronized (this) {
+          for (int i = 0; i < count; i++) {
+            last = in.readLong();
+            byte kind = in.readByte();
+            K key = this.keyCodec.read(in);
+            if (kind == 0) {
+              this.replica.set(key, in.readBoolean() ? this.valueCodec.read(in) : null);
+            } else {
+              this.replica.remove(key);
+            } // if/else
+          } // for
+          this.applied = Math.max(this.applied, last);
+        } // synchronized
+        out.writeLong(last);
+        out.flush();
+      } // while
+    } catch (IOException e) {
+      if (!this.closed) {
+        this.failure = e;
+      } // if
+    } // try/catch
+  } // run()
+
+} // class ReplicationFollower<K, V>
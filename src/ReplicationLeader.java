@@ -0,0 +1,337 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ships the changes made to a SkipList to a ReplicationFollower over a socket, so that the
+ * follower's list stays a copy of ours. The leader first sends a snapshot of the list, then every
+ * change, in batches of whatever has built up since the last one. The follower acknowledges each
+ * batch once it has applied it, which is how we measure how far behind it is. Only a few frames
+ * may be unacknowledged at once, so a slow follower holds back the writers of the list rather
+ * than falling further and further behind.
+ * 
+ * The leader must be created on the thread that changes the list (it takes the snapshot there).
+ * 
+ * A frame is the number of changes (an int) followed by each change: its sequence number (a
+ * long, 0 for the snapshot), 0 for a set or 1 for a remove (a byte), the key, and, for a set,
+ * whether there is a value (a boolean) and the value. Acknowledgements are the sequence number of
+ * the last change in the frame (a long). The follower acknowledges every frame, in order, so each
+ * acknowledgement answers the oldest frame in flight, snapshot frames included.
+ */
+public class ReplicationLeader<K, V> implements Closeable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The most changes we put in one frame.
+   */
+  static final int MAX_BATCH = 4096;
+
+  /**
+   * How long we wait for more changes after the first one of a frame, in nanoseconds, so that
+   * frames are not sent a few changes at a time.
+   */
+  static final long LINGER_NANOS = 200000;
+
+  /**
+   * The most frames that may be waiting for acknowledgement. Past that, we stop taking changes,
+   * the subscription fills up, and changes to the list wait.
+   */
+  static final int MAX_IN_FLIGHT = 8;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The changes to the list.
+   */
+  ChangeSubscription<K, V> subscription;
+
+  /**
+   * The entries of the list when we started.
+   */
+  ArrayList<Mutation<K, V>> snapshot = new ArrayList<Mutation<K, V>>();
+
+  /**
+   * The connection to the follower.
+   */
+  Socket socket;
+  DataOutputStream out;
+  DataInputStream in;
+
+  /**
+   * How to write keys and values.
+   */
+  Codec<K> keyCodec;
+  Codec<V> valueCodec;
+
+  /**
+   * The last sequence number sent, and the last one the follower has applied.
+   */
+  volatile long sent;
+  volatile long acknowledged;
+
+  /**
+   * The last sequence number, the send time and the number of snapshot entries of each frame not
+   * yet acknowledged.
+   */
+  ArrayDeque<long[]> inFlight = new ArrayDeque<long[]>();
+
+  /**
+   * The number of snapshot entries the follower has not yet acknowledged.
+   */
+  volatile long snapshotPending;
+
+  /**
+   * The time between sending the last acknowledged frame and hearing back.
+   */
+  volatile long lastRoundTrip;
+
+  /**
+   * The number of frames sent.
+   */
+  volatile long frames;
+
+  /**
+   * What went wrong with the connection (or null).
+   */
+  volatile IOException failure;
+
+  volatile boolean closed;
+
+  Thread sender;
+  Thread receiver;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start replicating list to the follower listening at host and port, buffering up to capacity
+   * changes before changes to the list wait for the follower.
+   */
+  public ReplicationLeader(SkipList<K, V> list, Codec<K> keyCodec, Codec<V> valueCodec,
+      String host, int port, int capacity) throws IOException {
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.socket = new Socket(host, port);
+    this.socket.setTcpNoDelay(true);
+    this.out =
+        new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 1 << 16));
+    this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+    list.forEach((key, value) -> this.snapshot
+        .add(new Mutation<K, V>(0, Mutation.Kind.SET, key, value, null)));
+    this.snapshotPending = this.snapshot.size();
+    this.subscription = list.subscribe(capacity);
+    this.sender = new Thread(this::send, "replication sender");
+    this.receiver = new Thread(this::receive, "replication receiver");
+    this.sender.setDaemon(true);
+    this.receiver.setDaemon(true);
+    this.sender.start();
+    this.receiver.start();
+  } // ReplicationLeader(SkipList<K, V>, Codec<K>, Codec<V>, String, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Count the changes made to the list that the follower has not yet applied, counting each
+   * entry of the snapshot it has not yet applied as one.
+   */
+  public long lagMutations() {
+    return this.subscription.published() - this.acknowledged + this.snapshotPending;
+  } // lagMutations()
+
+  /**
+   * Determine how long the oldest frame the follower has not yet acknowledged has been on its way,
+   * in nanoseconds (0, if there is none).
+   */
+  public long lagNanos() {
+    synchronized (this.inFlight) {
+      long[] oldest = this.inFlight.peek();
+      return (oldest == null) ? 0 : System.nanoTime() - oldest[1];
+    } // synchronized
+  } // lagNanos()
+
+  /**
+   * Get the time from sending the last acknowledged frame to its acknowledgement, in nanoseconds.
+   */
+  public long lastRoundTripNanos() {
+    return this.lastRoundTrip;
+  } // lastRoundTripNanos()
+
+  /**
+   * Count the frames sent so far.
+   */
+  public long frames() {
+    return this.frames;
+  } // frames()
+
+  /**
+   * Wait until the follower has applied the snapshot and every change made to the list so far.
+   * 
+   * @return true if it has, false if we ran out of time.
+   * @throws IOException if the connection failed.
+   */
+  public boolean awaitCaughtUp(long timeout, TimeUnit unit)
+      throws IOException, InterruptedException {
+    long target = this.subscription.published();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (this) {
+      while ((this.acknowledged < target || this.snapshotPending > 0) && this.failure == null) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, left);
+      } // while
+    } // synchronized
+    if (this.failure != null) {
+      throw this.failure;
+    }
+    return true;
+  } // awaitCaughtUp(long, TimeUnit)
+
+  /**
+   * Stop replicating and close the connection.
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.subscription.close();
+    this.sender.interrupt();
+    this.socket.close();
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Send the snapshot, then the changes as they come.
+   */
+  void send() {
+    try {
+      for (int start = 0; start < this.snapshot.size(); start += MAX_BATCH) {
+        if (!awaitWindow()) {
+          return;
+        } // if
+        int end = Math.min(start + MAX_BATCH, this.snapshot.size());
+        synchronized (this.inFlight) {
+          this.inFlight.add(new long[] { 0, System.nanoTime(), end - start });
+        } // synchronized
+        writeFrame(this.snapshot.subList(start, end));
+      } // for
+      this.snapshot = null;
+      while (awaitWindow()) {
+        List<Mutation<K, V>> batch = this.subscription.poll(MAX_BATCH, 50, TimeUnit.MILLISECONDS);
+        if (batch.isEmpty()) {
+          continue;
+        }
+        if (batch.size() < MAX_BATCH) {
+          LockSupport.parkNanos(LINGER_NANOS);
+          batch.addAll(this.subscription.poll(MAX_BATCH - batch.size(), 0, TimeUnit.NANOSECONDS));
+        } // if
+        long last = batch.get(batch.size() - 1).sequence;
+        synchronized (this.inFlight) {
+          this.inFlight.add(new long[] { last, System.nanoTime(), 0 });
+        } // synchronized
+        writeFrame(batch);
+        this.sent = last;
+      } // while
+    } catch (InterruptedException e) {
+      // we're closing
+    } catch (IOException e) {
+      fail(e);
+    } // try/catch
+  } // send()
+
+  /**
+   * Wait until there is room for another frame in flight.
+   * 
+   * @return false if we are closing or the connection failed instead.
+   */
+  boolean awaitWindow() throws InterruptedException {
+    synchronized (this.inFlight) {
+      // (fail wakes us when the connection goes, since no acknowledgement will)
+      while (this.inFlight.size() >= MAX_IN_FLIGHT && !this.closed && this.failure == null) {
+        this.inFlight.wait();
+      } // while
+    } // synchronized
+    return !this.closed && this.failure == null;
+  } // awaitWindow()
+
+  /**
+   * Write one frame and flush it.
+   */
+  void writeFrame(List<Mutation<K, V>> batch) throws IOException {
+    this.out.writeInt(batch.size());
+    for (Mutation<K, V> mutation : batch) {
+      this.out.writeLong(mutation.sequence);
+      this.out.writeByte(mutation.kind == Mutation.Kind.SET ? 0 : 1);
+      this.keyCodec.write(this.out, mutation.key);
+      if (mutation.kind == Mutation.Kind.SET) {
+        this.out.writeBoolean(mutation.value != null);
+        if (mutation.value != null) {
+          this.valueCodec.write(this.out, mutation.value);
+        } // if
+      } // if
+    } // for
+    this.out.flush();
+    this.frames++;
+  } // writeFrame(List<Mutation<K, V>>)
+
+  /**
+   * Read acknowledgements.
+   */
+  void receive() {
+    try {
+      while (!this.closed) {
+        long sequence = this.in.readLong();
+        long now = System.nanoTime();
+        synchronized (this.inFlight) {
+          long[] frame = this.inFlight.poll();
+          if (frame != null) {
+            this.lastRoundTrip = now - frame[1];
+            this.snapshotPending -= frame[2];
+          } // if
+          this.inFlight.notifyAll();
+        } // synchronized
+        synchronized (this) {
+          this.acknowledged = Math.max(this.acknowledged, sequence);
+          notifyAll();
+        } // synchronized
+      } // while
+    } catch (IOException e) {
+      fail(e);
+    } // try/catch
+  } // receive()
+
+  /**
+   * Record a failure of the connection (unless we closed it ourselves).
+   */
+  synchronized void fail(IOException e) {
+    if (!this.closed) {
+      this.failure = e;
+      this.subscription.close();
+    } // if
+    notifyAll();
+    synchronized (this.inFlight) {
+      this.inFlight.notifyAll();
+    } // synchronized
+  } // fail(IOException)
+
+} // class ReplicationLeader<K, V>
@@ -0,0 +1,73 @@
+/**
+ * Nodes in the skip list.
+ */
+class SLNode<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  K key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes.
+   */
+  SLNode<K, V>[] next;
+
+  /**
+   * The previous node at level 0 (or null, for the first node).
+   */
+  SLNode<K, V> prev;
+
+  /**
+   * Whether the node has been deleted lazily (and is only waiting to be unlinked).
+   */
+  boolean deleted;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  public SLNode(K key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = SkipList.newNodeArray(n);
+  } // SLNode(K, V, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+  /*
+   * sort hand to get an element in this.next
+   */
+  public SLNode<K, V> next(int i) {
+    SkipList.operationCount++;
+    return this.next[i];
+  }
+
+  /*
+   * short cut to set this.next
+   */
+  public void setNext(int i, SLNode<K, V> newNode) {
+    SkipList.operationCount++;
+    this.next[i] = newNode;
+  }
+
+  /*
+   * return the size of next of this node (also know as this node's height)
+   */
+  public int getHeight() {
+    return this.next.length;
+  }
+} // SLNode<K,V>
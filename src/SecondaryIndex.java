@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * An index on some attribute of the values of a SkipList, which finds the keys of the entries with
+ * a given attribute (or a range of attributes) in O(log n + k) time. Indexes are created with
+ * SkipList.addIndex, and the list keeps them up to date as entries are set and removed.
+ * 
+ * Entries whose attribute is null are not indexed. The attribute of a value must not change while
+ * the value is in the list (set a new value instead).
+ */
+public class SecondaryIndex<K, V, A> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Gets the attribute of a value.
+   */
+  Function<? super V, ? extends A> extractor;
+
+  /**
+   * Orders attributes.
+   */
+  Comparator<A> attributeComparator;
+
+  /**
+   * Orders keys (with the same attribute).
+   */
+  Comparator<K> keyComparator;
+
+  /**
+   * The indexed entries, ordered by attribute and then by key. Each maps to its key.
+   */
+  SkipList<IndexEntry<A, K>, K> entries;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty index.
+   */
+  SecondaryIndex(Function<? super V, ? extends A> extractor, Comparator<A> attributeComparator,
+      Comparator<K> keyComparator) {
+    this.extractor = extractor;
+    this.attributeComparator = attributeComparator;
+    this.keyComparator = keyComparator;
+    this.entries = new SkipList<IndexEntry<A, K>, K>(this::compare);
+  } // SecondaryIndex(Function<V, A>, Comparator<A>, Comparator<K>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the keys of the entries whose attribute is attribute, in key order.
+   */
+  public List<K> keysEqualTo(A attribute) {
+    return keysBetween(attribute, attribute);
+  } // keysEqualTo(A)
+
+  /**
+   * Get the keys of the entries whose attribute is between from and to (both included), in order
+   * of attribute and then key.
+   */
+  public List<K> keysBetween(A from, A to) {
+    if (from == null || to == null) {
+      throw new NullPointerException("null attribute");
+    }
+    ArrayList<K> result = new ArrayList<K>();
+    IndexEntry<A, K> end = new IndexEntry<A, K>(to, null, 1);
+    SLNode<IndexEntry<A, K>, K> node = first(new IndexEntry<A, K>(from, null, -1));
+    while (node != null && compare(node.key, end) < 0) {
+      result.add(node.value);
+      node = node.next(0);
+    } // while
+    return result;
+  } // keysBetween(A, A)
+
+  /**
+   * Count the indexed entries.
+   */
+  public int size() {
+    return this.entries.size();
+  } // size()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Index an entry.
+   */
+  void add(K key, V value) {
+    A attribute = this.extractor.apply(value);
+    if (attribute != null) {
+      this.entries.set(new IndexEntry<A, K>(attribute, key, 0), key);
+    } // if
+  } // add(K, V)
+
+  /**
+   * Stop indexing an entry.
+   */
+  void remove(K key, V value) {
+    A attribute = this.extractor.apply(value);
+    if (attribute != null) {
+      this.entries.remove(new IndexEntry<A, K>(attribute, key, 0));
+    } // if
+  } // remove(K, V)
+
+  /**
+   * Update the index after the value of key changed from oldValue to newValue.
+   */
+  void replace(K key, V oldValue, V newValue) {
+    A oldAttribute = this.extractor.apply(oldValue);
+    A newAttribute = this.extractor.apply(newValue);
+    boolean same = (oldAttribute == null) ? newAttribute == null
+        : newAttribute != null && this.attributeComparator.compare(oldAttribute, newAttribute) == 0;
+    if (same) {
+      return;
+    } // if
+    remove(key, oldValue);
+    add(key, newValue);
+  } // replace(K, V, V)
+
+  /**
+   * Forget every entry.
+   */
+  void clear() {
+    this.entries = new SkipList<IndexEntry<A, K>, K>(this::compare);
+  } // clear()
+
+  /**
+   * Find the first node whose entry comes after bound (or null).
+   */
+  SLNode<IndexEntry<A, K>, K> first(IndexEntry<A, K> bound) {
+    SLNode<IndexEntry<A, K>, K> floor = this.entries.floorNode(bound);
+    return (floor == null) ? this.entries.dummy.next(0) : floor.next(0);
+  } // first(IndexEntry<A, K>)
+
+  /**
+   * Order entries by attribute, then by key. A bound comes before (-1) or after (1) every entry
+   * with its attribute.
+   */
+  int compare(IndexEntry<A, K> e1, IndexEntry<A, K> e2) {
+    int result = this.attributeComparator.compare(e1.attribute, e2.attribute);
+    if (result != 0) {
+      return result;
+    } else if (e1.bound != 0 || e2.bound != 0) {
+      return Integer.compare(e1.bound, e2.bound);
+    } else {
+      return this.keyComparator.compare(e1.key, e2.key);
+    } // if/else
+  } // compare(IndexEntry<A, K>, IndexEntry<A, K>)
+
+} // class SecondaryIndex<K, V, A>
+
+
+/**
+ * An entry in a SecondaryIndex: an attribute and the key of an entry that has it, or a bound that
+ * comes before or after every key with the attribute.
+ */
+class IndexEntry<A, K> {
+  A attribute;
+  K key;
+
+  /**
+   * -1 for a lower bound, 1 for an upper bound, and 0 for an entry.
+   */
+  int bound;
+
+  IndexEntry(A attribute, K key, int bound) {
+    this.attribute = attribute;
+    this.key = key;
+    this.bound = bound;
+  } // IndexEntry(A, K, int)
+
+  // SkipList.set recognizes an existing key with equals
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof IndexEntry && Objects.equals(this.attribute,
+        ((IndexEntry<?, ?>) other).attribute) && Objects.equals(this.key,
+            ((IndexEntry<?, ?>) other).key) && this.bound == ((IndexEntry<?, ?>) other).bound;
+  } // equals(Object)
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.attribute, this.key, this.bound);
+  } // hashCode()
+} // class IndexEntry<A, K>
@@ -1,9 +1,26 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 /**
  * An implementation of skip lists.
@@ -18,6 +35,23 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    * The initial height of the skip list.
    */
   static final int INITIAL_HEIGHT = 16;
+
+  /**
+   * Estimated sizes of the objects that make up the list, assuming a 64-bit JVM with compressed
+   * references (12-byte object headers, 4-byte references, 8-byte alignment). A node is a header,
+   * four references and a boolean: 29 bytes, aligned to 32.
+   */
+  static final long NODE_BYTES = 32;
+  static final long ARRAY_HEADER_BYTES = 16;
+  static final long REFERENCE_BYTES = 4;
+
+  /**
+   * When we already have a node in hand (in hybrid mode, or in a descending iterator), we find the
+   * predecessors of nodes up to this height by walking back from the node (about 2^(height - 1)
+   * steps), and descend from the top for taller ones.
+   */
+  static final int WALK_BACK_HEIGHT = 4;
+
   static long operationCount = 0;
 
   // +---------------+-----------------------------------------------
@@ -33,8 +67,8 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   /**
    * Pointers to all the front elements.
    */
-  public ArrayList<SLNode<K, V>> front() {
-    return dummy.next;
+  public List<SLNode<K, V>> front() {
+    return Arrays.asList(dummy.next);
   }
 
   /**
@@ -59,6 +93,131 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
 
   SLNode<K, V> dummy;
 
+  /**
+   * A buffer for the predecessors of a key at each level, reused by set and remove. Only the
+   * levels below height are ever used, and we clear them after each call.
+   */
+  SLNode<K, V>[] update;
+
+  /**
+   * Whether reads reshape the list (see setAdaptive).
+   */
+  boolean adaptive;
+
+  /**
+   * Whether set and remove keep the gaps between nodes bounded (see setDeterministic).
+   */
+  boolean deterministic;
+
+  /**
+   * Whether something other than set and remove has changed the links in deterministic mode, so
+   * that the gaps must be rebuilt before the next set or remove.
+   */
+  boolean unbalanced;
+
+  /**
+   * The number of reads counted in adaptive mode (halved every epoch).
+   */
+  long accesses;
+
+  /**
+   * The number of times we have halved the access counts.
+   */
+  int epoch;
+
+  /**
+   * In adaptive mode, the access counts of the nodes read since the mode was turned on (null
+   * otherwise). A node without one keeps the height it has.
+   */
+  IdentityHashMap<SLNode<K, V>, AccessCount> accessCounts;
+
+  /**
+   * An optional filter that lets us answer lookups of absent keys without a descent. (Null when
+   * the filter is disabled.)
+   */
+  CountingBloomFilter<K> filter;
+
+  /**
+   * In lazy-delete mode (when positive), the fraction of nodes that may be tombstones before we
+   * compact the list.
+   */
+  double tombstoneRatio;
+
+  /**
+   * The number of nodes that have been deleted lazily but are still linked into the list.
+   */
+  int tombstones;
+
+  /**
+   * An optional learned index for numeric keys (or null).
+   */
+  LearnedIndex<K, V> learned;
+
+  /**
+   * The secondary indexes on the values (or null, if there are none).
+   */
+  ArrayList<SecondaryIndex<K, V, ?>> indexes;
+
+  /**
+   * The subscriptions to our changes (or null, if there have never been any).
+   */
+  CopyOnWriteArrayList<ChangeSubscription<K, V>> subscribers;
+
+  /**
+   * The number of changes published to subscribers.
+   */
+  long sequence;
+
+  /**
+   * In hybrid mode, a hash table from each key to its node (or null, outside hybrid mode).
+   */
+  HashIndex<K, V> hash;
+
+  /**
+   * Removed nodes kept for reuse by set (or null, if there is no pool).
+   */
+  NodePool<K, V> pool;
+
+  /**
+   * The number of lookups the filter answered on its own.
+   */
+  long filterRejects;
+
+  /**
+   * The number of lookups the filter let through that turned out to be misses.
+   */
+  long filterFalsePositives;
+
+  /**
+   * Estimated bytes used by the nodes themselves, by their pointer lists, by the keys, and by the
+   * values.
+   */
+  long nodeBytes;
+  long pointerBytes;
+  long keyBytes;
+  long valueBytes;
+
+  /**
+   * heightCounts[h] is the number of nodes of height h.
+   */
+  int[] heightCounts = new int[INITIAL_HEIGHT + 1];
+
+  /**
+   * Functions that estimate the size of a key or value.
+   */
+  ToLongFunction<? super K> keySizer = SkipList::estimateObjectBytes;
+  ToLongFunction<? super V> valueSizer = SkipList::estimateObjectBytes;
+
+  /**
+   * The most bytes we let the list use (or Long.MAX_VALUE for no limit).
+   */
+  long memoryBudget = Long.MAX_VALUE;
+
+  /**
+   * What we call when a write would go over the budget (or null, to simply reject the write).
+   */
+  SpillHandler<K, V> spillHandler;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -68,12 +227,12 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   public SkipList(Comparator<K> comparator) {
     this.dummy = new SLNode<K, V>(null, null, INITIAL_HEIGHT);
-    for (int i = 0; i < INITIAL_HEIGHT; i++) {
-      this.dummy.next.set(i, null);
-    } // for
+    this.update = newNodeArray(INITIAL_HEIGHT);
     this.comparator = comparator;
     this.size = 0;
     this.height = 0;
+    this.nodeBytes = NODE_BYTES;
+    this.pointerBytes = pointerBytes(INITIAL_HEIGHT);
   } // SkipList(Comparator<K>)
 
   /**
@@ -92,15 +251,50 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    * 
    * @see SimpleMap#set(java.lang.Object, java.lang.Object) this function set the key and value into
    * the Skip List. If the key already exists in the list, we simply update that node's value.
+   * 
+   * If the list has a memory budget and the write would exceed it, we first ask the spill handler
+   * to make room, and throw an IllegalStateException if there still isn't enough.
    */
   @Override
-  @SuppressWarnings("unchecked")
   public V set(K key, V value) {
+    SkipListSetEvent event = new SkipListSetEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    V result = setEntry(key, value);
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
+    return result;
+  } // set(K,V)
+
+  /**
+   * Do the work of set (without the Flight Recorder event).
+   */
+  V setEntry(K key, V value) {
     // if the key is null, throw NullPointerException
     if (key == null) {
       throw new NullPointerException("null key");
     } // if
 
+    // make sure we have room for the new entry
+    if (this.memoryBudget != Long.MAX_VALUE) {
+      reserve(key, value);
+    } // if
+
+    // in hybrid mode, overwriting an existing key needs no descent
+    if (this.hash != null) {
+      operationCount++;
+      SLNode<K, V> found = this.hash.get(key);
+      if (found != null) {
+        return replaceValue(found, value);
+      }
+    } // if
+
+    if (this.deterministic) {
+      return setDeterministic(key, value);
+    } // if
+
     /*
      * if this is an empty list or the new node need to be add in the front of the list (right after
      * dummy node)
@@ -108,62 +302,74 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
      * else add new node normally.
      */
     if (this.dummy.next(0) == null || comeBefore(key, this.dummy.next(0).key)) {
-      SLNode<K, V> newNode = new SLNode<K, V>(key, value, randomHeight());
+      SLNode<K, V> newNode = newNode(key, value, randomHeight());
       for (int i = 0; i < newNode.getHeight(); i++) {
         newNode.setNext(i, dummy.next(i));
         dummy.setNext(i, newNode);
       }
+      // the old first node (if any) now comes after the new node.
+      if (newNode.next(0) != null) {
+        newNode.next(0).prev = newNode;
+      }
       // update current height (the height of highest node) and size of the list.
       this.height = Math.max(this.height, newNode.getHeight());
-      this.size++;
+      nodeAdded(newNode);
       return null;
     } else {
       // add new node normally
 
-      // updatePointers holds the pointer to the nodes that will point to new node.
-      ArrayList<SLNode<K, V>> updatePointers = (ArrayList<SLNode<K, V>>) this.dummy.next.clone();
+      // update holds, at each level, the node that will point to the new node. We reuse the same
+      // buffer on every call, so that set doesn't allocate anything but the node.
+      SLNode<K, V>[] update = this.update;
       SLNode<K, V> temp = this.dummy;
 
       // Iterate through each level to find the right place to put new node...
       for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
-        while (temp != null && temp.next(currentLevel) != null
-            && comeBefore(temp.next(currentLevel).key, key)) {
+        while (temp.next(currentLevel) != null && comeBefore(temp.next(currentLevel).key, key)) {
           temp = temp.next(currentLevel);
         }
         operationCount++;
         // if we found the key already exists in the list, we update the value of that node and exit
         // early!!
         if (temp.next(currentLevel) != null && key.equals(temp.next(currentLevel).key)) {
-          V returnValue = temp.next(currentLevel).value;
-          temp.next(currentLevel).value = value;
-          return returnValue;
+          Arrays.fill(update, currentLevel + 1, this.height, null);
+          return replaceValue(temp.next(currentLevel), value);
         } else {
           // if we haven't found the node with key = input key, we change level, we add temp to
-          // update Pointer
-          updatePointers.set(currentLevel, temp);
+          // update
+          update[currentLevel] = temp;
         }
       } // for loop, exit when currentLevel < 0 (aka it reach the 'level 0 of the list')
 
       // adding new node ...
-      SLNode<K, V> newNode = new SLNode<K, V>(key, value, randomHeight());
+      SLNode<K, V> newNode = newNode(key, value, randomHeight());
 
-      // updating size of the list and the height (aka the height of the highest node) of the list.
-      this.size++;
+      // levels above the current height are reached from the dummy node
+      for (int i = this.height; i < newNode.getHeight(); i++) {
+        update[i] = this.dummy;
+      } // for
+
+      // updating the height (aka the height of the highest node) of the list. (nodeAdded updates
+      // the size.)
       this.height = Math.max(newNode.getHeight(), this.height);
 
       // Wire old nodes with new node
       for (int i = 0; i < newNode.getHeight(); i++) {
-        if (updatePointers.get(i) == null) {
-          dummy.setNext(i, newNode);
-        } else {
-          newNode.setNext(i, updatePointers.get(i).next(i));
-          updatePointers.get(i).setNext(i, newNode);
-        }
+        newNode.setNext(i, update[i].next(i));
+        update[i].setNext(i, newNode);
+      }
+      // and the back pointers at level 0
+      newNode.prev = (update[0] == this.dummy) ? null : update[0];
+      if (newNode.next(0) != null) {
+        newNode.next(0).prev = newNode;
       }
+      // don't keep nodes alive through the buffer
+      Arrays.fill(update, 0, this.height, null);
+      nodeAdded(newNode);
       return null;
     }
 
-  } // set(K,V)
+  } // setEntry(K,V)
 
   /*
    * (non-Javadoc)
@@ -174,31 +380,18 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public V get(K key) {
-    // if the key is null, throw NullPointerException
-    if (key == null) {
-      throw new NullPointerException("null key");
+    SkipListGetEvent event = new SkipListGetEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    SLNode<K, V> node = findNode(key);
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
     } // if
-
-    // if this is an empty list, throw exception.
-    if (this.height == 0) {
+    if (node == null) {
       throw new IndexOutOfBoundsException("The key was not found.");
     }
-
-    // else iterate through each levels of the list to find the node with key = input key, return
-    // immediately if found one.
-    SLNode<K, V> temp = this.dummy;
-    for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
-      while (temp.next(currentLevel) != null && comeBefore(temp.next(currentLevel).key, key)) {
-        temp = temp.next(currentLevel);
-      }
-      operationCount++;
-      if (temp.next(currentLevel) != null && temp.next(currentLevel).key.equals(key)) {
-        return temp.next(currentLevel).value;
-      }
-    }
-
-    // if you get to here, the key you are looking for is not in the list.
-    throw new IndexOutOfBoundsException("The key was not found.");
+    return node.value;
   } // get(K,V)
 
   @Override
@@ -208,12 +401,18 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
 
   @Override
   public boolean containsKey(K key) {
-    try {
-      get(key);
-      return true;
-    } catch (Exception e) {
+    if (key == null) {
       return false;
-    }
+    } // if
+    SkipListGetEvent event = new SkipListGetEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    boolean found = findNode(key) != null;
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
+    return found;
   } // containsKey(K)
 
   /*
@@ -222,9 +421,23 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    * @see SimpleMap#remove(java.lang.Object) This method remove the node associated with key, return
    * the value of delete note. If the key is not in the list, return null.
    */
-  @SuppressWarnings("unchecked")
   @Override
   public V remove(K key) {
+    SkipListRemoveEvent event = new SkipListRemoveEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    V result = removeEntry(key);
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
+    return result;
+  } // remove(K)
+
+  /**
+   * Do the work of remove (without the Flight Recorder event).
+   */
+  V removeEntry(K key) {
     // if the key is null, throw NullPointerException
     if (key == null) {
       throw new NullPointerException("null key");
@@ -235,216 +448,1861 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
       return null;
     }
 
+    // in lazy mode, we only mark the node as deleted
+    if (this.tombstoneRatio > 0) {
+      SLNode<K, V> node = findNode(key);
+      if (node == null) {
+        return null;
+      }
+      unindex(node);
+      node.deleted = true;
+      this.size--;
+      this.tombstones++;
+      if (this.tombstones >= this.tombstoneRatio * (this.size + this.tombstones)) {
+        compact();
+      }
+      if (this.subscribers != null) {
+        publish(Mutation.Kind.REMOVE, node.key, node.value, null);
+      }
+      return node.value;
+    }
+
+    // in hybrid mode, we know right away whether the key is there, and where
+    if (this.hash != null) {
+      SLNode<K, V> node = this.hash.get(key);
+      if (node == null) {
+        return null;
+      } else if (!this.deterministic && node.getHeight() <= WALK_BACK_HEIGHT) {
+        return removeNode(node);
+      }
+    } // if
+
+    if (this.deterministic) {
+      return removeDeterministic(key);
+    }
+
     // iterate through the list to find the node to delete
-    // updatePointers holds the pointer to the nodes that needed update their 'next' after we remove
-    // a node.
-    ArrayList<SLNode<K, V>> updatePointers = (ArrayList<SLNode<K, V>>) this.dummy.next.clone();
+    // update holds the pointer to the nodes that needed update their 'next' after we remove a
+    // node. (It's the same buffer that set uses.)
+    SLNode<K, V>[] update = this.update;
     SLNode<K, V> temp = this.dummy;
     for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
-      while (temp != null && temp.next(currentLevel) != null
-          && comeBefore(temp.next(currentLevel).key, key)) {
+      while (temp.next(currentLevel) != null && comeBefore(temp.next(currentLevel).key, key)) {
         temp = temp.next(currentLevel);
       }
       operationCount++;
-      updatePointers.set(currentLevel, temp);
+      update[currentLevel] = temp;
     } // for loop. We must keep going till level 0.
 
     // if there are no node with key in the list, return null
-    if (temp.next(0) == null || comeBefore(key, temp.next(0).key)) {
+    SLNode<K, V> toDelete = temp.next(0);
+    if (toDelete == null || comeBefore(key, toDelete.key)) {
+      Arrays.fill(update, 0, this.height, null);
       return null;
     } else {
       // wire nodes before and after the deleted node, update size, update height
-      SLNode<K, V> toDelete = temp.next(0);
-      this.size--;
-      // save the height of the deleted node before we delete that node.
-      int oldHeight = temp.next(0).getHeight();
-      for (int i = 0; i < oldHeight; i++) {
-        // wire things together
-        if (updatePointers.get(i) == toDelete) {
-          // wire dummy to whatever behind deleted node;
-          this.dummy.setNext(i, updatePointers.get(i).next(i).next(i));
-        } else {
-          updatePointers.get(i).setNext(i, updatePointers.get(i).next(i).next(i));
-        }
-      }
-
-      // update the height if needed (aka the height of the highest node in the list)
-      if (oldHeight >= this.height) {
-        int newHeight = 0;
-        while (newHeight <= INITIAL_HEIGHT && this.dummy.next(newHeight) != null) {
-          newHeight++;
-        }
-        this.height = newHeight;
-      }
-      return toDelete.value;
+      int oldHeight = this.height;
+      unlink(toDelete, update);
+      Arrays.fill(update, 0, oldHeight, null);
+      // (a node that was already lazily deleted wasn't really there)
+      V result = toDelete.deleted ? null : toDelete.value;
+      recycle(toDelete);
+      return result;
     }
-  } // remove(K)
+  } // removeEntry(K)
 
   @Override
   public Iterator<K> keys() {
-    return new Iterator<K>() {
-      Iterator<SLNode<K, V>> nit = SkipList.this.nodes();
-
-      @Override
-      public boolean hasNext() {
-        return nit.hasNext();
-      } // hasNext()
-
-      @Override
-      public K next() {
-        return nit.next().key;
-      } // next()
-
-      @Override
-      public void remove() {
-        nit.remove();
-      } // remove()
-    };
+    return keysOf(this.nodes());
   } // keys()
 
   @Override
   public Iterator<V> values() {
-    return new Iterator<V>() {
-      Iterator<SLNode<K, V>> nit = SkipList.this.nodes();
-
-      @Override
-      public boolean hasNext() {
-        return nit.hasNext();
-      } // hasNext()
-
-      @Override
-      public V next() {
-        return nit.next().value;
-      } // next()
-
-      @Override
-      public void remove() {
-        nit.remove();
-      } // remove()
-    };
+    return valuesOf(this.nodes());
   } // values()
 
   @Override
   public void forEach(BiConsumer<? super K, ? super V> action) {
+    SkipListIterateEvent event = new SkipListIterateEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
     Iterator<SLNode<K, V>> nodes = this.nodes();
     SLNode<K, V> current;
     while (nodes.hasNext()) {
       current = nodes.next();
       action.accept(current.key, current.value);
     }
-
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
   } // forEach
 
-  // +----------------------+----------------------------------------
-  // | Other public methods |
-  // +----------------------+
+  /**
+   * Remove every entry for which filter returns true, in a single pass over the list.
+   * 
+   * @return the number of entries removed.
+   */
+  public int removeIf(BiPredicate<? super K, ? super V> filter) {
+    SkipListIterateEvent event = new SkipListIterateEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    int removed = 0;
+    Iterator<SLNode<K, V>> nodes = this.nodes();
+    while (nodes.hasNext()) {
+      SLNode<K, V> current = nodes.next();
+      if (filter.test(current.key, current.value)) {
+        nodes.remove();
+        removed++;
+      }
+    } // while
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
+    return removed;
+  } // removeIf(BiPredicate)
 
+  // +--------------------+------------------------------------------
+  // | Bulk list algebra |
+  // +--------------------+
 
-  /*
-   * (non-Javadoc)
+  /**
+   * Build a new list with every key in this list or in other. Where both lists have a key, the
+   * value comes from other (as if we had set every entry of other into a copy of this list).
    * 
-   * @see java.lang.Object#toString() return a String contains information of this list
+   * Both lists must be ordered by the same comparator. Takes time linear in the sizes of the
+   * lists.
    */
-  public String toString() {
-    String builder = "";
-    Iterator<SLNode<K, V>> it = this.nodes();
-    while (it.hasNext()) {
-      SLNode<K, V> current = it.next();
-      builder += ", (" + current.key.toString() + " " + current.value.toString() + ")";
-    }
-    return builder;
-  }
+  public SkipList<K, V> union(SkipList<K, V> other) {
+    return union(other, (mine, theirs) -> theirs);
+  } // union(SkipList<K, V>)
 
   /**
-   * Dump the tree to some output location.
+   * Build a new list with every key in this list or in other. Where both lists have a key, the
+   * value is merge(value in this list, value in other).
    */
-  public void dump(PrintWriter pen) {
-    String leading = "          ";
-
-    SLNode<K, V> current = this.dummy.next(0);
-
-    // Print some X's at the start
-    pen.print(leading);
-    for (int level = 0; level < this.height; level++) {
-      pen.print(" X");
-    } // for
-    pen.println();
-    printLinks(pen, leading);
-
-    while (current != null) {
-      // Print out the key as a fixed-width field.
-      // (There's probably a better way to do this.)
-      String str;
-      if (current.key == null) {
-        str = "<null>";
-      } else {
-        str = current.key.toString();
-      } // if/else
-      if (str.length() < leading.length()) {
-        pen.print(leading.substring(str.length()) + str);
+  public SkipList<K, V> union(SkipList<K, V> other, BinaryOperator<V> merge) {
+    SkipList<K, V> result = new SkipList<K, V>(this.comparator);
+    SLNode<K, V>[] tails = result.emptyTails();
+    SLNode<K, V> mine = live(this.dummy.next[0]);
+    SLNode<K, V> theirs = live(other.dummy.next[0]);
+    while (mine != null || theirs != null) {
+      int order = (mine == null) ? 1
+          : (theirs == null) ? -1 : this.comparator.compare(mine.key, theirs.key);
+      if (order < 0) {
+        result.append(mine.key, mine.value, tails);
+        mine = live(mine.next[0]);
+      } else if (order > 0) {
+        result.append(theirs.key, theirs.value, tails);
+        theirs = live(theirs.next[0]);
       } else {
-        pen.print(str.substring(0, leading.length()));
+        result.append(mine.key, merge.apply(mine.value, theirs.value), tails);
+        mine = live(mine.next[0]);
+        theirs = live(theirs.next[0]);
       } // if/else
-
-      // Print an indication for the links it has.
-      for (int level = 0; level < current.next.size(); level++) {
-        pen.print("-*");
-      } // for
-        // Print an indication for the links it lacks.
-      for (int level = current.next.size(); level < this.height; level++) {
-        pen.print(" |");
-      } // for
-      pen.println();
-      printLinks(pen, leading);
-
-      current = current.next.get(0);
     } // while
-
-    // Print some O's at the start
-    pen.print(leading);
-    for (int level = 0; level < this.height; level++) {
-      pen.print(" O");
-    } // for
-    pen.println();
-
-  } // dump(PrintWriter)
+    return result;
+  } // union(SkipList<K, V>, BinaryOperator<V>)
 
   /**
-   * Print some links (for dump).
+   * Build a new list with the entries of this list whose keys also appear in other.
    */
-  void printLinks(PrintWriter pen, String leading) {
-    pen.print(leading);
-    for (int level = 0; level < this.height; level++) {
-      pen.print(" |");
-    } // for
-    pen.println();
-  } // printLinks
-
-  // +---------+-----------------------------------------------------
-  // | Helpers |
-  // +---------+
+  public SkipList<K, V> intersect(SkipList<K, V> other) {
+    return mergeFilter(other, true);
+  } // intersect(SkipList<K, V>)
 
   /**
-   * Pick a random height for a new node.
+   * Build a new list with the entries of this list whose keys do not appear in other.
    */
-  int randomHeight() {
-    int result = 1;
-    while (rand.nextDouble() < prob) {
-      result = result + 1;
-    }
-    return Math.min(result, INITIAL_HEIGHT);
-  } // random\Height()
+  public SkipList<K, V> difference(SkipList<K, V> other) {
+    return mergeFilter(other, false);
+  } // difference(SkipList<K, V>)
 
   /**
-   * Get an iterator for all of the nodes. (Useful for implementing the other iterators.)
+   * Remove every entry whose key is greater than or equal to key from this list, and return those
+   * entries as a new list.
+   * 
+   * The links are cut in expected O(log n) time. Updating the size and memory counters takes time
+   * proportional to the smaller of the two halves (or to the entries removed, if the list has
+   * subscribers, who hear about each of them).
    */
-  Iterator<SLNode<K, V>> nodes() {
-    return new Iterator<SLNode<K, V>>() {
-
+  public SkipList<K, V> split(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    SkipList<K, V> result = new SkipList<K, V>(this.comparator);
+    SLNode<K, V>[] preds = predecessors(key);
+    SLNode<K, V> first = preds[0].next(0);
+    if (first == null) {
+      return result;
+    } // if
+
+    // cut every level between preds and the rest of the list
+    for (int i = 0; i < this.height; i++) {
+      result.dummy.setNext(i, preds[i].next(i));
+      preds[i].setNext(i, null);
+    } // for
+    first.prev = null;
+    SLNode<K, V> lastKept = (preds[0] == this.dummy) ? null : preds[0];
+    this.height = levelsInUse();
+    result.height = result.levelsInUse();
+    this.unbalanced = this.deterministic;
+
+    // move the bookkeeping, walking whichever half is shorter
+    if (lastKept == null || this.subscribers != null || !forwardRunLonger(first, lastKept)) {
+      transfer(first, true, result, true);
+    } else {
+      swapAccounting(result);
+      result.transfer(lastKept, false, this, false);
+      reindex();
+    } // if/else
+    return result;
+  } // split(K)
+
+  /**
+   * Move every entry of other to the end of this list, leaving other empty. Every key in other
+   * must come after every key in this list.
+   * 
+   * The links are joined in expected O(log n) time. Updating the size and memory counters takes
+   * time proportional to the smaller of the two lists, and updating a filter (if enabled) or
+   * telling subscribers (if any) takes time proportional to the size of other.
+   * 
+   * @throws IllegalArgumentException if the keys of the lists overlap.
+   */
+  public void concat(SkipList<K, V> other) {
+    if (other == this) {
+      throw new IllegalArgumentException("cannot concatenate a list with itself");
+    } // if
+    SLNode<K, V> otherFirst = other.dummy.next(0);
+    if (otherFirst == null) {
+      return;
+    } // if
+
+    // find the last node at every level
+    SLNode<K, V>[] tails = newNodeArray(INITIAL_HEIGHT);
+    SLNode<K, V> temp = this.dummy;
+    for (int currentLevel = INITIAL_HEIGHT - 1; currentLevel >= 0; currentLevel--) {
+      while (temp.next(currentLevel) != null) {
+        temp = temp.next(currentLevel);
+      }
+      tails[currentLevel] = temp;
+    } // for
+    SLNode<K, V> last = (temp == this.dummy) ? null : temp;
+    if (last != null && !comeBefore(last.key, otherFirst.key)) {
+      throw new IllegalArgumentException("the keys of the lists overlap");
+    } // if
+
+    // join the levels
+    for (int i = 0; i < other.height; i++) {
+      tails[i].setNext(i, other.dummy.next(i));
+      other.dummy.setNext(i, null);
+    } // for
+    otherFirst.prev = last;
+    this.height = Math.max(this.height, other.height);
+    other.height = 0;
+    this.unbalanced = this.deterministic;
+
+    // move the bookkeeping, walking whichever list is shorter
+    if (last == null || other.size <= this.size || this.subscribers != null
+        || other.subscribers != null) {
+      other.transfer(otherFirst, true, this, true);
+    } else {
+      swapAccounting(other);
+      other.transfer(last, false, this, false);
+      reindex();
+      other.reindex();
+    } // if/else
+  } // concat(SkipList<K, V>)
+
+  /**
+   * Remove every entry whose key is greater than or equal to from and less than to, and return
+   * those entries as a new list (which the caller may simply drop).
+   *
+   * Two descents find the ends of the run, and the run is spliced out of every level at once, in
+   * expected O(log n) time. Updating the size and memory counters (and any filter, indexes and
+   * subscribers) takes time proportional to the entries removed.
+   *
+   * @throws IllegalArgumentException if to comes before from.
+   */
+  public SkipList<K, V> removeRange(K from, K to) {
+    if (from == null || to == null) {
+      throw new NullPointerException("null key");
+    } // if
+    if (comeBefore(to, from)) {
+      throw new IllegalArgumentException("the range ends before it starts");
+    } // if
+    return cut(predecessors(from), predecessors(to));
+  } // removeRange(K, K)
+
+  /**
+   * Remove every entry whose key is less than toKey, and return those entries as a new list
+   * (which the caller may simply drop).
+   *
+   * The links are cut in expected O(log n) time. Updating the size and memory counters takes time
+   * proportional to the smaller of the entries removed and the entries kept (or to the entries
+   * removed, if the list has subscribers, who hear about each of them).
+   */
+  public SkipList<K, V> removeHead(K toKey) {
+    if (toKey == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return cut(emptyTails(), predecessors(toKey));
+  } // removeHead(K)
+
+  /**
+   * Remove every entry whose key is greater than or equal to fromKey, and return those entries as
+   * a new list (which the caller may simply drop). This is the same as split(fromKey).
+   */
+  public SkipList<K, V> removeTail(K fromKey) {
+    return split(fromKey);
+  } // removeTail(K)
+
+  // +---------------------+-----------------------------------------
+  // | Ascending iteration |
+  // +---------------------+
+
+  /**
+   * Get an iterator for the keys greater than or equal to fromKey, from smallest to largest.
+   */
+  public Iterator<K> keys(K fromKey) {
+    if (fromKey == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return keysOf(nodes(predecessors(fromKey)));
+  } // keys(K)
+
+  /**
+   * Get an iterator for the values of the keys greater than or equal to fromKey, from smallest
+   * key to largest.
+   */
+  public Iterator<V> values(K fromKey) {
+    if (fromKey == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return valuesOf(nodes(predecessors(fromKey)));
+  } // values(K)
+
+  // +----------------------+----------------------------------------
+  // | Descending iteration |
+  // +----------------------+
+
+  /**
+   * Get an iterator for all of the keys in the map, from largest to smallest.
+   */
+  public Iterator<K> descendingKeys() {
+    return keysOf(descendingNodes(lastNode()));
+  } // descendingKeys()
+
+  /**
+   * Get an iterator for the keys less than or equal to fromKey, from largest to smallest.
+   */
+  public Iterator<K> descendingKeys(K fromKey) {
+    return keysOf(descendingNodes(floorNode(fromKey)));
+  } // descendingKeys(K)
+
+  /**
+   * Get an iterator for the values of the keys less than or equal to fromKey, from largest key to
+   * smallest.
+   */
+  public Iterator<V> descendingValues(K fromKey) {
+    return valuesOf(descendingNodes(floorNode(fromKey)));
+  } // descendingValues(K)
+
+  /**
+   * Apply a function to each key/value pair, from largest key to smallest.
+   */
+  public void descendingForEach(BiConsumer<? super K, ? super V> action) {
+    SkipListIterateEvent event = new SkipListIterateEvent();
+    event.begin();
+    int levels = this.height;
+    long operations = operationCount;
+    for (SLNode<K, V> current = liveBefore(lastNode()); current != null;
+        current = liveBefore(current.prev)) {
+      action.accept(current.key, current.value);
+    } // for
+    if (event.shouldCommit()) {
+      event.record(this, levels, operations);
+    } // if
+  } // descendingForEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Turn adaptive mode on or off. In adaptive mode, get and containsKey count how often each node
+   * is read, raise nodes that get a large share of the reads to taller heights (so that they are
+   * found in fewer steps), and lower them again once they cool down. Turning the mode off keeps
+   * the current heights (and forgets the counts, which only adaptive lists pay for).
+   */
+  public void setAdaptive(boolean adaptive) {
+    if (adaptive && this.deterministic) {
+      throw new IllegalStateException("adaptive mode can't be used in deterministic mode");
+    }
+    if (adaptive && this.hash != null) {
+      throw new IllegalStateException("adaptive mode can't be used in hybrid mode");
+    }
+    if (adaptive && this.accessCounts == null) {
+      this.accessCounts = new IdentityHashMap<SLNode<K, V>, AccessCount>();
+      this.accesses = 0;
+    } else if (!adaptive) {
+      this.accessCounts = null;
+    } // if/else
+    this.adaptive = adaptive;
+  } // setAdaptive(boolean)
+
+  /**
+   * Turn deterministic mode on or off. In deterministic mode (a 1-2-3 skip list, after Munro,
+   * Papadakis and Sedgewick), heights are not random: between any two neighbours at level i + 1
+   * there are one to three nodes of height i + 1, and set and remove split, merge or borrow
+   * between these gaps on their way down to keep it so. Every set, get and remove then takes
+   * O(log n) steps in the worst case, not just on average. (Heights are still capped at
+   * INITIAL_HEIGHT, so past tens of thousands of entries the top level's gap grows with n.)
+   * 
+   * Turning the mode on rebuilds the heights in linear time. Other changes to the links (removeIf,
+   * iterator removal, compaction, split and concat) leave the gaps to be rebuilt, in linear time,
+   * by the next set or remove. Turning the mode off keeps the current heights.
+   * 
+   * @throws IllegalStateException if the list is in adaptive mode.
+   */
+  public void setDeterministic(boolean deterministic) {
+    if (deterministic && this.adaptive) {
+      throw new IllegalStateException("deterministic mode can't be used in adaptive mode");
+    }
+    this.deterministic = deterministic;
+    if (deterministic) {
+      rebalance();
+    }
+  } // setDeterministic(boolean)
+
+  /**
+   * Turn hybrid mode on or off. In hybrid mode, the list also keeps a hash table from each key to
+   * its node, so that get, containsKey, set of a key that is already there, and remove of a key
+   * that isn't take O(1) steps. remove of a short node (most of them) jumps to the node and walks
+   * back to its predecessors instead of descending. Ordered operations still use the levels. The
+   * table costs four to eight references per entry (not counted in estimatedBytes).
+   * 
+   * @throws IllegalStateException if the list is in adaptive mode.
+   */
+  public void setHybrid(boolean hybrid) {
+    if (hybrid && this.adaptive) {
+      throw new IllegalStateException("hybrid mode can't be used in adaptive mode");
+    }
+    if (!hybrid) {
+      this.hash = null;
+    } else if (this.hash == null) {
+      this.hash = new HashIndex<K, V>(this);
+    }
+  } // setHybrid(boolean)
+
+  /**
+   * Keep up to capacity of the nodes that remove unlinks, for each height, and reuse them in set
+   * instead of allocating new nodes (or, for 0, stop pooling and drop the pooled nodes). This cuts
+   * the garbage a list with steady churn produces to almost nothing. Pooled nodes hold no
+   * references, but their memory is not counted in estimatedBytes.
+   */
+  public void setNodePool(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("negative capacity: " + capacity);
+    }
+    this.pool = (capacity == 0) ? null : new NodePool<K, V>(capacity);
+  } // setNodePool(int)
+
+  /**
+   * Turn lazy deletion on (for a positive ratio) or off (for 0). In lazy mode, remove only marks
+   * the node as a tombstone, which reads and iterators skip, and once tombstones make up ratio of
+   * the nodes in the list, we unlink all of them in one pass. Turning the mode off compacts the
+   * list right away.
+   */
+  public void setTombstoneRatio(double ratio) {
+    this.tombstoneRatio = ratio;
+    if (ratio <= 0) {
+      compact();
+    }
+  } // setTombstoneRatio(double)
+
+  /**
+   * Get the number of lazily deleted nodes that are still in the list.
+   */
+  public int tombstones() {
+    return this.tombstones;
+  } // tombstones()
+
+  /**
+   * Unlink every tombstone, in a single pass along the bottom of the list.
+   */
+  public void compact() {
+    if (this.tombstones == 0) {
+      return;
+    }
+    SLNode<K, V>[] preds = emptyTails();
+    SLNode<K, V> node = this.dummy.next(0);
+    while (node != null) {
+      SLNode<K, V> following = node.next(0);
+      if (node.deleted) {
+        unlink(node, preds);
+      } else {
+        for (int i = 0; i < node.getHeight(); i++) {
+          preds[i] = node;
+        } // for
+      }
+      node = following;
+    } // while
+  } // compact()
+
+  /**
+   * Speed up get and containsKey with a learned index, which predicts from the value of a key
+   * where to start the search. Only for lists whose keys are Numbers; the index is retrained
+   * automatically as the keys change. (Not used in adaptive mode.)
+   * 
+   * @throws ClassCastException if some key is not a Number.
+   */
+  public void enableLearnedIndex() {
+    this.learned = new LearnedIndex<K, V>(this);
+  } // enableLearnedIndex()
+
+  /**
+   * Stop using the learned index.
+   */
+  public void disableLearnedIndex() {
+    this.learned = null;
+  } // disableLearnedIndex()
+
+  /**
+   * Index the entries by the attribute extractor finds in their values, ordered by comparator.
+   * The index is kept up to date as entries are set and removed.
+   */
+  public <A> SecondaryIndex<K, V, A> addIndex(Function<? super V, ? extends A> extractor,
+      Comparator<A> comparator) {
+    SecondaryIndex<K, V, A> index =
+        new SecondaryIndex<K, V, A>(extractor, comparator, this.comparator);
+    for (SLNode<K, V> node = live(this.dummy.next[0]); node != null; node = live(node.next[0])) {
+      index.add(node.key, node.value);
+    } // for
+    if (this.indexes == null) {
+      this.indexes = new ArrayList<SecondaryIndex<K, V, ?>>();
+    }
+    this.indexes.add(index);
+    return index;
+  } // addIndex(Function<V, A>, Comparator<A>)
+
+  /**
+   * Stop maintaining index.
+   */
+  public void dropIndex(SecondaryIndex<K, V, ?> index) {
+    if (this.indexes != null) {
+      this.indexes.remove(index);
+      if (this.indexes.isEmpty()) {
+        this.indexes = null;
+      }
+    }
+  } // dropIndex(SecondaryIndex<K, V, ?>)
+
+  /**
+   * Subscribe to the changes made to the list from now on: every new or replaced value (with the
+   * value it replaced) and every removal, in order. Up to capacity changes wait for the
+   * subscriber; after that, changes to the list wait until the subscriber polls.
+   */
+  public ChangeSubscription<K, V> subscribe(int capacity) {
+    if (this.subscribers == null) {
+      this.subscribers = new CopyOnWriteArrayList<ChangeSubscription<K, V>>();
+    }
+    ChangeSubscription<K, V> subscription = new ChangeSubscription<K, V>(this, capacity);
+    this.subscribers.add(subscription);
+    return subscription;
+  } // subscribe(int)
+
+  /**
+   * Keep a counting Bloom filter in front of the list, so that lookups of absent keys usually skip
+   * the descent. The filter is sized for expectedKeys and grows automatically.
+   */
+  public void enableFilter(int expectedKeys) {
+    rebuildFilter(Math.max(expectedKeys, this.size));
+  } // enableFilter(int)
+
+  /**
+   * Stop using the Bloom filter.
+   */
+  public void disableFilter() {
+    this.filter = null;
+  } // disableFilter()
+
+  /**
+   * The fraction of filtered lookups for absent keys that the filter failed to reject (0 if the
+   * filter is disabled or no such lookups have happened yet).
+   */
+  public double filterFalsePositiveRate() {
+    long misses = this.filterRejects + this.filterFalsePositives;
+    if (misses == 0) {
+      return 0;
+    }
+    return (double) this.filterFalsePositives / misses;
+  } // filterFalsePositiveRate()
+
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#toString() return a String contains information of this list
+   */
+  public String toString() {
+    return toString(Integer.MAX_VALUE);
+  } // toString()
+
+  /**
+   * Get a String describing at most maxEntries entries of the list (followed by ", ..." if there
+   * are more).
+   */
+  public String toString(int maxEntries) {
+    StringBuilder builder = new StringBuilder();
+    try {
+      writeTo(builder, maxEntries);
+    } catch (IOException e) {
+      // StringBuilders don't throw IOExceptions
+      throw new UncheckedIOException(e);
+    } // try/catch
+    return builder.toString();
+  } // toString(int)
+
+  /**
+   * Write the text that toString() would return to out, without building it in memory first.
+   */
+  public void writeTo(Appendable out) throws IOException {
+    writeTo(out, Integer.MAX_VALUE);
+  } // writeTo(Appendable)
+
+  /**
+   * Write the text that toString(maxEntries) would return to out, without building it in memory
+   * first.
+   */
+  public void writeTo(Appendable out, int maxEntries) throws IOException {
+    int count = 0;
+    for (SLNode<K, V> current = live(this.dummy.next[0]); current != null;
+        current = live(current.next[0])) {
+      if (count++ == maxEntries) {
+        out.append(", ...");
+        break;
+      } // if
+      out.append(", (").append(String.valueOf(current.key)).append(' ')
+          .append(String.valueOf(current.value)).append(')');
+    } // for
+  } // writeTo(Appendable, int)
+
+  /**
+   * Write every entry to out in the given format. The output is buffered, and flushed (but not
+   * closed) at the end.
+   */
+  public void writeTo(OutputStream out, ExportFormat format) throws IOException {
+    switch (format) {
+      case TEXT:
+        Writer text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeTo(text);
+        text.flush();
+        break;
+      case CSV:
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write("key,value\n");
+        for (SLNode<K, V> current = live(this.dummy.next[0]); current != null;
+            current = live(current.next[0])) {
+          writeCsvField(csv, String.valueOf(current.key));
+          csv.write(',');
+          writeCsvField(csv, String.valueOf(current.value));
+          csv.write('\n');
+        } // for
+        csv.flush();
+        break;
+      case BINARY:
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(this.size);
+        for (SLNode<K, V> current = live(this.dummy.next[0]); current != null;
+            current = live(current.next[0])) {
+          writeBinaryField(data, String.valueOf(current.key));
+          writeBinaryField(data, String.valueOf(current.value));
+        } // for
+        data.flush();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown format " + format);
+    } // switch
+  } // writeTo(OutputStream, ExportFormat)
+
+  /**
+   * Dump the tree to some output location.
+   */
+  public void dump(PrintWriter pen) {
+    String leading = "          ";
+    StringBuilder line = new StringBuilder();
+
+    // Every other line shows the same links, so we only build it once.
+    line.append(leading);
+    for (int level = 0; level < this.height; level++) {
+      line.append(" |");
+    } // for
+    String links = line.toString();
+
+    SLNode<K, V> current = this.dummy.next(0);
+
+    // Print some X's at the start
+    line.setLength(0);
+    line.append(leading);
+    for (int level = 0; level < this.height; level++) {
+      line.append(" X");
+    } // for
+    pen.println(line);
+    pen.println(links);
+
+    while (current != null) {
+      // Print out the key as a fixed-width field.
+      // (There's probably a better way to do this.)
+      String str;
+      if (current.key == null) {
+        str = "<null>";
+      } else {
+        str = current.key.toString();
+      } // if/else
+      line.setLength(0);
+      if (str.length() < leading.length()) {
+        line.append(leading, str.length(), leading.length()).append(str);
+      } else {
+        line.append(str, 0, leading.length());
+      } // if/else
+
+      // Print an indication for the links it has.
+      for (int level = 0; level < current.getHeight(); level++) {
+        line.append("-*");
+      } // for
+        // Print an indication for the links it lacks.
+      for (int level = current.getHeight(); level < this.height; level++) {
+        line.append(" |");
+      } // for
+      pen.println(line);
+      pen.println(links);
+
+      current = current.next[0];
+    } // while
+
+    // Print some O's at the start
+    line.setLength(0);
+    line.append(leading);
+    for (int level = 0; level < this.height; level++) {
+      line.append(" O");
+    } // for
+    pen.println(line);
+
+  } // dump(PrintWriter)
+
+  /**
+   * Estimate the number of bytes of heap used by the list, including its keys and values.
+   */
+  public long estimatedBytes() {
+    return this.nodeBytes + this.pointerBytes + this.keyBytes + this.valueBytes;
+  } // estimatedBytes()
+
+  /**
+   * Estimate the number of bytes used by the node objects (including the dummy node).
+   */
+  public long nodeBytes() {
+    return this.nodeBytes;
+  } // nodeBytes()
+
+  /**
+   * Estimate the number of bytes used by the nodes' lists of next pointers.
+   */
+  public long pointerBytes() {
+    return this.pointerBytes;
+  } // pointerBytes()
+
+  /**
+   * Estimate the number of bytes used by the keys.
+   */
+  public long keyBytes() {
+    return this.keyBytes;
+  } // keyBytes()
+
+  /**
+   * Estimate the number of bytes used by the values.
+   */
+  public long valueBytes() {
+    return this.valueBytes;
+  } // valueBytes()
+
+  /**
+   * Get a histogram of node heights: element h of the result is the number of nodes of height h.
+   */
+  public int[] heightHistogram() {
+    return this.heightCounts.clone();
+  } // heightHistogram()
+
+  /**
+   * Use different functions to estimate the sizes of keys and values.
+   */
+  public void setSizers(ToLongFunction<? super K> keySizer, ToLongFunction<? super V> valueSizer) {
+    this.keySizer = keySizer;
+    this.valueSizer = valueSizer;
+    this.keyBytes = 0;
+    this.valueBytes = 0;
+    for (SLNode<K, V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+      this.keyBytes += keySizer.applyAsLong(node.key);
+      this.valueBytes += valueSizer.applyAsLong(node.value);
+    } // for
+  } // setSizers(ToLongFunction, ToLongFunction)
+
+  /**
+   * Limit the list to about budget bytes (as measured by estimatedBytes()). When a call to set
+   * would go over the budget, we call handler (if it's not null) and then reject the write if
+   * there's still not enough room.
+   */
+  public void setMemoryBudget(long budget, SpillHandler<K, V> handler) {
+    this.memoryBudget = budget;
+    this.spillHandler = handler;
+  } // setMemoryBudget(long, SpillHandler<K, V>)
+
+  /**
+   * Remove any memory budget.
+   */
+  public void clearMemoryBudget() {
+    this.memoryBudget = Long.MAX_VALUE;
+    this.spillHandler = null;
+  } // clearMemoryBudget()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Pick a random height for a new node.
+   */
+  int randomHeight() {
+    int result = 1;
+    while (rand.nextDouble() < prob) {
+      result = result + 1;
+    }
+    return Math.min(result, INITIAL_HEIGHT);
+  } // random\Height()
+
+  /**
+   * Get an iterator for all of the nodes. (Useful for implementing the other iterators.)
+   * 
+   * The iterator skips tombstones. It remembers the last node it passed at each level, so its
+   * remove() can unlink the current node without searching for it.
+   */
+  Iterator<SLNode<K, V>> nodes() {
+    return nodes(emptyTails());
+  } // nodes()
+
+  /**
+   * Get an iterator for the nodes after start[0], given the last node at or before start[0] at
+   * each level (as predecessors finds them).
+   */
+  Iterator<SLNode<K, V>> nodes(SLNode<K, V>[] start) {
+    return new Iterator<SLNode<K, V>>() {
+
+      /**
+       * The node the iterator is at: the node most recently returned, or, once that has been
+       * removed, the node before it. (start[0], at the start.)
+       */
+      SLNode<K, V> position = start[0];
+
+      /**
+       * The node most recently returned (or null, if there is none or it has been removed).
+       */
+      SLNode<K, V> current = null;
+
+      /**
+       * preds[i] is the last node before current with a link at level i.
+       */
+      SLNode<K, V>[] preds = start;
+
+      @Override
+      public boolean hasNext() {
+        return live(this.position.next[0]) != null;
+      } // hasNext()
+
+      @Override
+      public SLNode<K, V> next() {
+        // the node we are leaving behind becomes the predecessor at each of its levels
+        if (this.current != null) {
+          passed(this.current);
+        }
+        SLNode<K, V> next = this.position.next[0];
+        while (next != null && next.deleted) {
+          passed(next);
+          next = next.next[0];
+        } // while
+        if (next == null) {
+          throw new IllegalStateException();
+        }
+        this.position = next;
+        this.current = next;
+        return next;
+      } // next();
+
+      @Override
+      public void remove() {
+        if (this.current == null) {
+          throw new IllegalStateException();
+        }
+        unlink(this.current, this.preds);
+        this.position = this.preds[0];
+        this.current = null;
+      } // remove()
+
+      /**
+       * Note that we have gone past node.
+       */
+      void passed(SLNode<K, V> node) {
+        for (int i = 0; i < node.getHeight(); i++) {
+          this.preds[i] = node;
+        } // for
+      } // passed(SLNode<K, V>)
+    }; // new Iterator
+  } // nodes(SLNode<K, V>[])
+
+  /**
+   * Find the node with the given key, or null if there is no such node.
+   */
+  SLNode<K, V> findNode(K key) {
+    // if the key is null, throw NullPointerException
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+
+    // if this is an empty list, there's nothing to find.
+    if (this.height == 0) {
+      return null;
+    }
+
+    // in hybrid mode, the hash table knows where the node is
+    if (this.hash != null) {
+      operationCount++;
+      SLNode<K, V> node = this.hash.get(key);
+      return (node == null || node.deleted) ? null : node;
+    }
+
+    // if the filter says the key is absent, believe it.
+    if (this.filter != null && !this.filter.mightContain(key)) {
+      this.filterRejects++;
+      return null;
+    }
+
+    // in adaptive mode, the search also reshapes the list
+    if (this.adaptive) {
+      SLNode<K, V> found = findAdaptive(key);
+      if (found == null && this.filter != null) {
+        this.filterFalsePositives++;
+      }
+      return found;
+    }
+
+    // with a learned index, we can usually skip the top levels and start near the key
+    SLNode<K, V> temp = this.dummy;
+    int top = this.height - 1;
+    if (this.learned != null && this.height > LearnedIndex.LEVEL) {
+      if (this.learned.needsTraining()) {
+        this.learned.train(this);
+      }
+      SLNode<K, V> anchor = this.learned.start(key);
+      if (anchor != null && anchor.getHeight() > LearnedIndex.LEVEL) {
+        temp = anchor;
+        top = LearnedIndex.LEVEL;
+      }
+    }
+
+    // else iterate through each levels of the list to find the node with key = input key, return
+    // immediately if found one.
+    for (int currentLevel = top; currentLevel >= 0; currentLevel--) {
+      while (temp.next(currentLevel) != null && comeBefore(temp.next(currentLevel).key, key)) {
+        temp = temp.next(currentLevel);
+      }
+      operationCount++;
+      if (temp.next(currentLevel) != null && temp.next(currentLevel).key.equals(key)) {
+        SLNode<K, V> found = temp.next(currentLevel);
+        return found.deleted ? null : found;
+      }
+    }
+
+    // if you get to here, the key you are looking for is not in the list.
+    if (this.filter != null) {
+      this.filterFalsePositives++;
+    }
+    return null;
+  } // findNode(K)
+
+  /**
+   * Find the node with the given key in adaptive mode. Along the way, we take away the top level
+   * of cold nodes we pass at that level, and if we find the node, we count the access and raise
+   * the node to the height it now deserves.
+   */
+  SLNode<K, V> findAdaptive(K key) {
+    SLNode<K, V>[] update = this.update;
+    SLNode<K, V> temp = this.dummy;
+    SLNode<K, V> found = null;
+    int oldHeight = this.height;
+    for (int currentLevel = this.height - 1; currentLevel >= 0 && found == null; currentLevel--) {
+      SLNode<K, V> next;
+      while ((next = temp.next(currentLevel)) != null && comeBefore(next.key, key)) {
+        if (next.getHeight() == currentLevel + 1 && next.getHeight() > deservedHeight(next)) {
+          // next has cooled down, so it loses this level
+          temp.setNext(currentLevel, next.next(currentLevel));
+          resize(next, currentLevel);
+        } else {
+          temp = next;
+        }
+      } // while
+      operationCount++;
+      update[currentLevel] = temp;
+      if (next != null && next.key.equals(key)) {
+        found = next;
+      }
+    } // for
+    if (this.dummy.next(this.height - 1) == null) {
+      this.height = levelsInUse();
+    }
+
+    if (found != null && found.deleted) {
+      found = null;
+    }
+    if (found != null) {
+      countAccess(found);
+      for (int target = deservedHeight(found); found.getHeight() < target;) {
+        // link the node in at one more level
+        int level = found.getHeight();
+        SLNode<K, V> pred = (level < this.height) ? update[level] : this.dummy;
+        resize(found, level + 1);
+        found.setNext(level, pred.next(level));
+        pred.setNext(level, found);
+        this.height = Math.max(this.height, level + 1);
+      } // for
+    }
+    Arrays.fill(update, 0, oldHeight, null);
+    return found;
+  } // findAdaptive(K)
+
+  /**
+   * Record a read of node, decaying old counts as we go.
+   */
+  void countAccess(SLNode<K, V> node) {
+    AccessCount count = this.accessCounts.get(node);
+    if (count == null) {
+      count = new AccessCount(node.getHeight(), this.epoch);
+      this.accessCounts.put(node, count);
+    } // if
+    count.hits = decayedHits(count) + 1;
+    count.epoch = this.epoch;
+    this.accesses++;
+    // every so often, halve all the counts, so that the list follows changes in popularity. We
+    // halve the counts of individual nodes lazily (in decayedHits).
+    if (this.accesses >= Math.max(8L * this.size, 1024)) {
+      this.accesses /= 2;
+      this.epoch++;
+    }
+  } // countAccess(SLNode<K, V>)
+
+  /**
+   * Get an access count, halved once for every epoch since it was last updated.
+   */
+  int decayedHits(AccessCount count) {
+    int age = this.epoch - count.epoch;
+    return (age >= 31) ? 0 : count.hits >> age;
+  } // decayedHits(AccessCount)
+
+  /**
+   * Determine how tall node should be in adaptive mode. A node that gets a fraction p of the reads
+   * should sit about log2(n * p) levels up, so that reaching it costs about log2(1/p) steps. Nodes
+   * never go below the height they had when first read (and nodes not yet read keep theirs).
+   */
+  int deservedHeight(SLNode<K, V> node) {
+    AccessCount count = this.accessCounts.get(node);
+    if (count == null || this.accesses < this.size) {
+      // we haven't seen enough reads to tell hot nodes from cold ones
+      return node.getHeight();
+    }
+    long weight = (long) this.size * decayedHits(count) / this.accesses;
+    int boost = 64 - Long.numberOfLeadingZeros(weight);
+    return Math.max(count.baseHeight, Math.min(boost, INITIAL_HEIGHT));
+  } // deservedHeight(SLNode<K, V>)
+
+  /**
+   * Make a node for a new entry, reusing one from the pool if we can.
+   */
+  SLNode<K, V> newNode(K key, V value, int height) {
+    if (this.pool != null) {
+      SLNode<K, V> node = this.pool.take(key, value, height);
+      if (node != null) {
+        return node;
+      }
+    } // if
+    return new SLNode<K, V>(key, value, height);
+  } // newNode(K, V, int)
+
+  /**
+   * Give a node that remove has just unlinked to the pool, if there is one. Anchors of the learned
+   * index are not recycled, since the index still compares keys against removed anchors. Nor are
+   * nodes that iterators remove: an iterator unlinks through unlink alone, so the node it holds
+   * keeps its key and its back pointer.
+   */
+  void recycle(SLNode<K, V> node) {
+    if (this.pool != null && (this.learned == null || node.getHeight() <= LearnedIndex.LEVEL)) {
+      this.pool.release(node);
+    }
+  } // recycle(SLNode<K, V>)
+
+  /**
+   * Change the height of node (without linking or unlinking anything), keeping the memory
+   * counters up to date.
+   */
+  void resize(SLNode<K, V> node, int newHeight) {
+    if (this.learned != null
+        && (node.getHeight() > LearnedIndex.LEVEL) != (newHeight > LearnedIndex.LEVEL)) {
+      // the anchors are no longer the nodes at the anchor level
+      this.learned.stale = Integer.MAX_VALUE / 2;
+    }
+    this.pointerBytes += pointerBytes(newHeight) - pointerBytes(node.getHeight());
+    this.heightCounts[node.getHeight()]--;
+    this.heightCounts[newHeight]++;
+    node.next = Arrays.copyOf(node.next, newHeight);
+  } // resize(SLNode<K, V>, int)
+
+  /**
+   * Give the existing node found a new value, returning the old one (or null, if found was a
+   * tombstone, which comes back to life).
+   */
+  V replaceValue(SLNode<K, V> found, V value) {
+    V returnValue = found.value;
+    found.value = value;
+    valueReplaced(found, returnValue);
+    if (found.deleted) {
+      // bring a lazily deleted node back to life
+      found.deleted = false;
+      this.tombstones--;
+      this.size++;
+      index(found);
+      announce(Mutation.Kind.SET, found, null);
+      return null;
+    }
+    return returnValue;
+  } // replaceValue(SLNode<K, V>, V)
+
+  /**
+   * Set key to value in deterministic mode. On the way down, we split every full gap (three
+   * nodes) we are about to enter by raising its middle node, so that the gap the new node joins
+   * at the bottom still has room for it.
+   */
+  V setDeterministic(K key, V value) {
+    if (this.unbalanced) {
+      rebalance();
+    }
+    SLNode<K, V> temp = this.dummy;
+    for (int level = this.height; level >= 1; level--) {
+      // the gap below temp: its nodes at level - 1, up to its next node at this level
+      SLNode<K, V> end = (level < temp.getHeight()) ? temp.next(level) : null;
+      SLNode<K, V> middle = null;
+      int count = 0;
+      for (SLNode<K, V> node = temp.next(level - 1); node != end; node = node.next(level - 1)) {
+        if (++count == 2) {
+          middle = node;
+        }
+      } // for
+      if (count >= 3 && level < INITIAL_HEIGHT) {
+        resize(middle, level + 1);
+        middle.setNext(level, end);
+        temp.setNext(level, middle);
+        this.height = Math.max(this.height, level + 1);
+      } // if
+
+      // move down into the gap
+      while (temp.next(level - 1) != null && comeBefore(temp.next(level - 1).key, key)) {
+        temp = temp.next(level - 1);
+      } // while
+      operationCount++;
+      if (temp.next(level - 1) != null && key.equals(temp.next(level - 1).key)) {
+        return replaceValue(temp.next(level - 1), value);
+      } // if
+    } // for
+
+    // new nodes always start at the bottom
+    SLNode<K, V> newNode = newNode(key, value, 1);
+    newNode.setNext(0, temp.next(0));
+    temp.setNext(0, newNode);
+    newNode.prev = (temp == this.dummy) ? null : temp;
+    if (newNode.next(0) != null) {
+      newNode.next(0).prev = newNode;
+    }
+    this.height = Math.max(this.height, 1);
+    nodeAdded(newNode);
+    return null;
+  } // setDeterministic(K, V)
+
+  /**
+   * Remove key in deterministic mode. On the way down, we make sure that every gap we enter has at
+   * least two nodes, by merging it with a neighbouring gap or borrowing a node from one, so that
+   * the gap we take a node from at the bottom still has one afterwards. A node taller than 1 is
+   * not unlinked itself: it takes the key and value of the node just before it (which is in the
+   * bottom gap below it), and that node is unlinked instead.
+   */
+  V removeDeterministic(K key) {
+    if (this.unbalanced) {
+      rebalance();
+    }
+    SLNode<K, V> temp = this.dummy;
+    for (int level = this.height - 1; level >= 1; level--) {
+      SLNode<K, V> before = null;
+      while (temp.next(level) != null && comeBefore(temp.next(level).key, key)) {
+        before = temp;
+        temp = temp.next(level);
+      } // while
+      operationCount++;
+      SLNode<K, V> after = temp.next(level);
+      if (gapSize(temp, after, level - 1) > 1) {
+        continue;
+      } // if
+      if (after != null && after.getHeight() == level + 1) {
+        SLNode<K, V> end = after.next(level);
+        if (gapSize(after, end, level - 1) <= 1) {
+          // merge with the gap to the right, lowering after
+          temp.setNext(level, end);
+        } else {
+          // borrow the first node of the gap to the right
+          SLNode<K, V> first = after.next(level - 1);
+          resize(first, level + 1);
+          first.setNext(level, end);
+          temp.setNext(level, first);
+        } // if/else
+        resize(after, level);
+      } else if (before != null && temp.getHeight() == level + 1) {
+        SLNode<K, V> last = before.next(level - 1);
+        int size = 1;
+        while (last.next(level - 1) != temp) {
+          last = last.next(level - 1);
+          size++;
+        } // while
+        if (size <= 1) {
+          // merge with the gap to the left, lowering temp
+          before.setNext(level, after);
+          resize(temp, level);
+          temp = before;
+        } else {
+          // borrow the last node of the gap to the left
+          resize(last, level + 1);
+          last.setNext(level, after);
+          before.setNext(level, last);
+          resize(temp, level);
+          temp = last;
+        } // if/else
+      } // if/else
+    } // for
+    while (this.height > 0 && this.dummy.next(this.height - 1) == null) {
+      this.height--;
+    } // while
+
+    while (temp.next(0) != null && comeBefore(temp.next(0).key, key)) {
+      temp = temp.next(0);
+    } // while
+    SLNode<K, V> found = temp.next(0);
+    if (found == null || !key.equals(found.key)) {
+      return null;
+    }
+    V value = found.value;
+    if (found.getHeight() > 1) {
+      if (temp == this.dummy || temp.getHeight() > 1) {
+        // the gaps were not in shape, so fall back on an ordinary unlink
+        unlink(found, predecessors(key));
+        recycle(found);
+        return value;
+      }
+      // found takes over the entry of temp, and temp holds the entry we remove
+      K tempKey = temp.key;
+      V tempValue = temp.value;
+      temp.key = found.key;
+      temp.value = found.value;
+      found.key = tempKey;
+      found.value = tempValue;
+      if (this.hash != null) {
+        this.hash.put(tempKey, found);
+      }
+      if (this.learned != null && found.getHeight() > LearnedIndex.LEVEL) {
+        this.learned.stale++;
+      }
+      found = temp;
+    } // if
+    SLNode<K, V> pred = (found.prev == null) ? this.dummy : found.prev;
+    pred.setNext(0, found.next(0));
+    if (found.next(0) != null) {
+      found.next(0).prev = found.prev;
+    }
+    if (this.dummy.next(0) == null) {
+      this.height = 0;
+    }
+    nodeRemoved(found);
+    recycle(found);
+    return value;
+  } // removeDeterministic(K)
+
+  /**
+   * Count the nodes strictly between start and end at the given level.
+   */
+  static <K, V> int gapSize(SLNode<K, V> start, SLNode<K, V> end, int level) {
+    int count = 0;
+    for (SLNode<K, V> node = start.next(level); node != end; node = node.next(level)) {
+      count++;
+    } // for
+    return count;
+  } // gapSize(SLNode<K, V>, SLNode<K, V>, int)
+
+  /**
+   * Rebuild the heights of every node for deterministic mode, in linear time. Going up a level at
+   * a time, every second node is raised, so that each gap has one or two nodes, until at most
+   * three nodes remain at the top.
+   */
+  void rebalance() {
+    this.unbalanced = false;
+    ArrayList<SLNode<K, V>> nodes = new ArrayList<SLNode<K, V>>(this.size + this.tombstones);
+    for (SLNode<K, V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+      nodes.add(node);
+    } // for
+    int[] heights = new int[nodes.size()];
+    Arrays.fill(heights, 1);
+    int[] current = new int[nodes.size()];
+    for (int i = 0; i < current.length; i++) {
+      current[i] = i;
+    } // for
+    int count = current.length;
+    for (int h = 1; count > 3 && h < INITIAL_HEIGHT; h++) {
+      // raise the nodes at odd positions, but never the last one
+      int raised = 0;
+      for (int j = 1; j < count - 1 + count % 2; j += 2) {
+        heights[current[j]] = h + 1;
+        current[raised++] = current[j];
+      } // for
+      count = raised;
+    } // for
+
+    SLNode<K, V>[] tails = emptyTails();
+    for (int i = 0; i < heights.length; i++) {
+      SLNode<K, V> node = nodes.get(i);
+      if (node.getHeight() != heights[i]) {
+        resize(node, heights[i]);
+      } // if
+      for (int level = 1; level < heights[i]; level++) {
+        tails[level].next[level] = node;
+        tails[level] = node;
+      } // for
+    } // for
+    for (int level = 1; level < INITIAL_HEIGHT; level++) {
+      tails[level].next[level] = null;
+    } // for
+    this.height = levelsInUse();
+  } // rebalance()
+
+  /**
+   * Update the bookkeeping after a node has been linked into the list.
+   */
+  void nodeAdded(SLNode<K, V> node) {
+    account(node, 1);
+    index(node);
+    if (this.hash != null) {
+      this.hash.put(node.key, node);
+    }
+    if (this.learned != null && node.getHeight() > LearnedIndex.LEVEL) {
+      this.learned.stale++;
+    }
+    if (this.filter != null) {
+      this.filter.add(node.key);
+      if (this.filter.isOverloaded()) {
+        rebuildFilter(this.filter.capacity * 2);
+      }
+    }
+    announce(Mutation.Kind.SET, node, null);
+  } // nodeAdded(SLNode<K, V>)
+
+  /**
+   * Update the bookkeeping after a node has been unlinked from the list.
+   */
+  void nodeRemoved(SLNode<K, V> node) {
+    account(node, -1);
+    unindex(node);
+    if (this.hash != null) {
+      this.hash.remove(node.key);
+    }
+    if (this.learned != null && node.getHeight() > LearnedIndex.LEVEL) {
+      this.learned.removed(node);
+      this.learned.stale++;
+    }
+    if (this.filter != null) {
+      this.filter.remove(node.key);
+    }
+    if (this.accessCounts != null) {
+      this.accessCounts.remove(node);
+    }
+    announce(Mutation.Kind.REMOVE, node, null);
+  } // nodeRemoved(SLNode<K, V>)
+
+  /**
+   * Add (sign = 1) or subtract (sign = -1) a node to the size and memory counters.
+   */
+  void account(SLNode<K, V> node, int sign) {
+    if (node.deleted) {
+      this.tombstones += sign;
+    } else {
+      this.size += sign;
+    }
+    this.nodeBytes += sign * NODE_BYTES;
+    this.pointerBytes += sign * pointerBytes(node.getHeight());
+    this.keyBytes += sign * this.keySizer.applyAsLong(node.key);
+    this.valueBytes += sign * this.valueSizer.applyAsLong(node.value);
+    this.heightCounts[node.getHeight()] += sign;
+  } // account(SLNode<K, V>, int)
+
+  /**
+   * Exchange the size and memory counters of this list with those of other.
+   */
+  void swapAccounting(SkipList<K, V> other) {
+    int tempSize = this.size;
+    this.size = other.size;
+    other.size = tempSize;
+    tempSize = this.tombstones;
+    this.tombstones = other.tombstones;
+    other.tombstones = tempSize;
+    long temp = this.nodeBytes;
+    this.nodeBytes = other.nodeBytes;
+    other.nodeBytes = temp;
+    temp = this.pointerBytes;
+    this.pointerBytes = other.pointerBytes;
+    other.pointerBytes = temp;
+    temp = this.keyBytes;
+    this.keyBytes = other.keyBytes;
+    other.keyBytes = temp;
+    temp = this.valueBytes;
+    this.valueBytes = other.valueBytes;
+    other.valueBytes = temp;
+    int[] tempCounts = this.heightCounts;
+    this.heightCounts = other.heightCounts;
+    other.heightCounts = tempCounts;
+  } // swapAccounting(SkipList<K, V>)
+
+  /**
+   * Move the bookkeeping for the run of nodes starting at start (and going forward or backward at
+   * level 0) from this list to target. If indexes is false, only the counters move, and any
+   * filter is left for the caller to repair.
+   */
+  void transfer(SLNode<K, V> start, boolean forward, SkipList<K, V> target, boolean indexes) {
+    for (SLNode<K, V> node = start; node != null; node = forward ? node.next[0] : node.prev) {
+      if (indexes) {
+        this.nodeRemoved(node);
+        target.nodeAdded(node);
+      } else {
+        this.account(node, -1);
+        target.account(node, 1);
+      }
+    } // for
+  } // transfer(SLNode<K, V>, boolean, SkipList<K, V>, boolean)
+
+  /**
+   * Rebuild the per-key structures (the filter, the learned index, the secondary indexes and the
+   * hash table) from the nodes in the list.
+   */
+  void reindex() {
+    if (this.hash != null) {
+      this.hash = new HashIndex<K, V>(this);
+    }
+    if (this.indexes != null) {
+      for (SecondaryIndex<K, V, ?> index : this.indexes) {
+        index.clear();
+      } // for
+      for (SLNode<K, V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+        index(node);
+      } // for
+    }
+    if (this.filter != null) {
+      rebuildFilter(Math.max(this.size, this.filter.capacity / 2));
+    }
+    if (this.learned != null) {
+      this.learned.train(this);
+    }
+    if (this.accessCounts != null) {
+      // keep only the counts of nodes that are still ours
+      IdentityHashMap<SLNode<K, V>, AccessCount> counts =
+          new IdentityHashMap<SLNode<K, V>, AccessCount>();
+      for (SLNode<K, V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+        AccessCount count = this.accessCounts.get(node);
+        if (count != null) {
+          counts.put(node, count);
+        } // if
+      } // for
+      this.accessCounts = counts;
+    }
+  } // reindex()
+
+  /**
+   * Update the bookkeeping after the value of a node has been replaced.
+   */
+  void valueReplaced(SLNode<K, V> node, V oldValue) {
+    this.valueBytes +=
+        this.valueSizer.applyAsLong(node.value) - this.valueSizer.applyAsLong(oldValue);
+    if (this.indexes != null && !node.deleted) {
+      for (SecondaryIndex<K, V, ?> index : this.indexes) {
+        index.replace(node.key, oldValue, node.value);
+      } // for
+    }
+    announce(Mutation.Kind.SET, node, oldValue);
+  } // valueReplaced(SLNode<K, V>, V)
+
+  /**
+   * Tell the subscribers (if any) about a change to a live node. We only call this once the list,
+   * its indexes and its filter are up to date, since a subscriber that is slow to make room holds
+   * us up here.
+   */
+  void announce(Mutation.Kind kind, SLNode<K, V> node, V oldValue) {
+    if (this.subscribers != null && !node.deleted) {
+      publish(kind, node.key, node.value, oldValue);
+    }
+  } // announce(Mutation.Kind, SLNode<K, V>, V)
+
+  /**
+   * Tell every subscriber about a change.
+   */
+  void publish(Mutation.Kind kind, K key, V value, V oldValue) {
+    if (this.subscribers.isEmpty()) {
+      return;
+    }
+    Mutation<K, V> mutation = new Mutation<K, V>(++this.sequence, kind, key, value, oldValue);
+    for (ChangeSubscription<K, V> subscription : this.subscribers) {
+      subscription.publish(mutation);
+    } // for
+  } // publish(Mutation.Kind, K, V, V)
+
+  /**
+   * Add a live node to the secondary indexes.
+   */
+  void index(SLNode<K, V> node) {
+    if (this.indexes != null && !node.deleted) {
+      for (SecondaryIndex<K, V, ?> index : this.indexes) {
+        index.add(node.key, node.value);
+      } // for
+    }
+  } // index(SLNode<K, V>)
+
+  /**
+   * Remove a live node from the secondary indexes.
+   */
+  void unindex(SLNode<K, V> node) {
+    if (this.indexes != null && !node.deleted) {
+      for (SecondaryIndex<K, V, ?> index : this.indexes) {
+        index.remove(node.key, node.value);
+      } // for
+    }
+  } // unindex(SLNode<K, V>)
+
+  /**
+   * Make sure there is room in the budget to set key to value, spilling if necessary.
+   * 
+   * @throws IllegalStateException if there is not enough room, even after spilling.
+   */
+  void reserve(K key, V value) {
+    long needed = this.valueSizer.applyAsLong(value);
+    SLNode<K, V> existing = findNode(key);
+    if (existing != null) {
+      needed -= this.valueSizer.applyAsLong(existing.value);
+    } else {
+      needed += NODE_BYTES + pointerBytes(1) + this.keySizer.applyAsLong(key);
+    } // if/else
+    long over = estimatedBytes() + needed - this.memoryBudget;
+    if (over > 0 && this.spillHandler != null) {
+      this.spillHandler.spill(this, over);
+      over = estimatedBytes() + needed - this.memoryBudget;
+    } // if
+    if (over > 0) {
+      throw new IllegalStateException("memory budget exceeded");
+    } // if
+  } // reserve(K, V)
+
+  /**
+   * Estimate the bytes used by an array of n next pointers.
+   */
+  static long pointerBytes(int n) {
+    return align(ARRAY_HEADER_BYTES + REFERENCE_BYTES * n);
+  } // pointerBytes(int)
+
+  /**
+   * Round bytes up to a multiple of 8, as the JVM does with objects.
+   */
+  static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  } // align(long)
+
+  /**
+   * A rough estimate of the bytes used by an object (and whatever it alone refers to).
+   */
+  static long estimateObjectBytes(Object obj) {
+    if (obj == null) {
+      return 0;
+    } else if (obj instanceof String) {
+      // a String plus its byte array (assuming compact, Latin-1 strings)
+      return 24 + align(ARRAY_HEADER_BYTES + ((String) obj).length());
+    } else if (obj instanceof Long || obj instanceof Double) {
+      return 24;
+    } else {
+      return 16;
+    } // if/else
+  } // estimateObjectBytes(Object)
+
+  /**
+   * Replace the filter with a fresh one of the given capacity holding every key in the list.
+   */
+  void rebuildFilter(int capacity) {
+    CountingBloomFilter<K> newFilter = new CountingBloomFilter<K>(capacity);
+    for (SLNode<K, V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+      newFilter.add(node.key);
+    } // for
+    this.filter = newFilter;
+  } // rebuildFilter(int)
+
+  /**
+   * Get an iterator for the keys of the nodes returned by nit.
+   */
+  Iterator<K> keysOf(Iterator<SLNode<K, V>> nit) {
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return nit.next().key;
+      } // next()
+
+      @Override
+      public void remove() {
+        nit.remove();
+      } // remove()
+    };
+  } // keysOf(Iterator<SLNode<K, V>>)
+
+  /**
+   * Get an iterator for the values of the nodes returned by nit.
+   */
+  Iterator<V> valuesOf(Iterator<SLNode<K, V>> nit) {
+    return new Iterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return nit.next().value;
+      } // next()
+
+      @Override
+      public void remove() {
+        nit.remove();
+      } // remove()
+    };
+  } // valuesOf(Iterator<SLNode<K, V>>)
+
+  /**
+   * Remove a node we have already found (in hybrid mode), finding its predecessors by walking
+   * back from it.
+   */
+  V removeNode(SLNode<K, V> node) {
+    SLNode<K, V>[] update = this.update;
+    int height = node.getHeight();
+    walkBack(node, update);
+    unlink(node, update);
+    Arrays.fill(update, 0, height, null);
+    V result = node.deleted ? null : node.value;
+    recycle(node);
+    return result;
+  } // removeNode(SLNode<K, V>)
+
+  /**
+   * Fill in preds with the last node before node at each of node's levels, by walking back at
+   * level 0: the predecessor at level i is the closest earlier node taller than i.
+   */
+  void walkBack(SLNode<K, V> node, SLNode<K, V>[] preds) {
+    int height = node.getHeight();
+    int level = 0;
+    for (SLNode<K, V> temp = node.prev; level < height; temp = temp.prev) {
+      operationCount++;
+      if (temp == null) {
+        Arrays.fill(preds, level, height, this.dummy);
+        break;
+      }
+      while (level < height && level < temp.getHeight()) {
+        preds[level++] = temp;
+      } // while
+    } // for
+  } // walkBack(SLNode<K, V>, SLNode<K, V>[])
+
+  /**
+   * Unlink node from the list, given the last node before it at each of its levels.
+   */
+  void unlink(SLNode<K, V> node, SLNode<K, V>[] preds) {
+    int oldHeight = node.getHeight();
+    for (int i = 0; i < oldHeight; i++) {
+      preds[i].setNext(i, node.next(i));
+    } // for
+    if (node.next(0) != null) {
+      node.next(0).prev = node.prev;
+    }
+    // update the height if needed (aka the height of the highest node in the list)
+    if (oldHeight >= this.height) {
+      this.height = levelsInUse();
+    }
+    this.unbalanced = this.deterministic;
+    nodeRemoved(node);
+  } // unlink(SLNode<K, V>, SLNode<K, V>[])
+
+  /**
+   * Build a new list with the entries of this list whose keys do (keep = true) or do not (keep =
+   * false) appear in other, in a single merge pass.
+   */
+  SkipList<K, V> mergeFilter(SkipList<K, V> other, boolean keep) {
+    SkipList<K, V> result = new SkipList<K, V>(this.comparator);
+    SLNode<K, V>[] tails = result.emptyTails();
+    SLNode<K, V> theirs = live(other.dummy.next[0]);
+    for (SLNode<K, V> mine = live(this.dummy.next[0]); mine != null; mine = live(mine.next[0])) {
+      while (theirs != null && this.comparator.compare(theirs.key, mine.key) < 0) {
+        theirs = live(theirs.next[0]);
+      } // while
+      boolean shared = theirs != null && this.comparator.compare(theirs.key, mine.key) == 0;
+      if (shared == keep) {
+        result.append(mine.key, mine.value, tails);
+      } // if
+    } // for
+    return result;
+  } // mergeFilter(SkipList<K, V>, boolean)
+
+  /**
+   * Count the levels at which the dummy node has a successor (aka the height of the highest node).
+   */
+  int levelsInUse() {
+    int levels = 0;
+    while (levels < INITIAL_HEIGHT && this.dummy.next(levels) != null) {
+      levels++;
+    }
+    return levels;
+  } // levelsInUse()
+
+  /**
+   * Find, at every level, the last node whose key comes before key (the dummy node, if there is
+   * none).
+   */
+  SLNode<K, V>[] predecessors(K key) {
+    SLNode<K, V>[] preds = newNodeArray(INITIAL_HEIGHT);
+    Arrays.fill(preds, this.dummy);
+    SLNode<K, V> temp = this.dummy;
+    for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
+      while (temp.next(currentLevel) != null && comeBefore(temp.next(currentLevel).key, key)) {
+        temp = temp.next(currentLevel);
+      }
+      preds[currentLevel] = temp;
+    } // for
+    return preds;
+  } // predecessors(K)
+
+  /**
+   * Unlink the run of nodes that come after before[i] and no later than through[i] at each level
+   * i (before[i] and through[i] are the same when the run has no nodes at level i), and return
+   * the run as a new list.
+   */
+  SkipList<K, V> cut(SLNode<K, V>[] before, SLNode<K, V>[] through) {
+    SkipList<K, V> result = new SkipList<K, V>(this.comparator);
+    SLNode<K, V> first = before[0].next(0);
+    if (first == null || before[0] == through[0]) {
+      return result;
+    } // if
+    SLNode<K, V> last = through[0];
+
+    // splice the run out of every level, and hang it off the new list's dummy
+    for (int i = 0; i < this.height; i++) {
+      if (before[i] != through[i]) {
+        result.dummy.setNext(i, before[i].next(i));
+        before[i].setNext(i, through[i].next(i));
+        through[i].setNext(i, null);
+      } // if
+    } // for
+    SLNode<K, V> after = before[0].next(0);
+    if (after != null) {
+      after.prev = first.prev;
+    } // if
+    first.prev = null;
+    this.height = levelsInUse();
+    result.height = result.levelsInUse();
+    this.unbalanced = this.deterministic;
+
+    // move the bookkeeping; when we removed a prefix, we can walk whichever part is shorter
+    if (before[0] == this.dummy && after != null && this.subscribers == null
+        && !forwardRunLonger(after, last)) {
+      swapAccounting(result);
+      result.transfer(after, true, this, false);
+      reindex();
+    } else {
+      transfer(first, true, result, true);
+    } // if/else
+    return result;
+  } // cut(SLNode<K, V>[], SLNode<K, V>[])
+
+  /**
+   * Add a new node at the end of the list, given the last node at each level (which we update).
+   * The key must come after every key already in the list.
+   */
+  void append(K key, V value, SLNode<K, V>[] tails) {
+    SLNode<K, V> newNode = newNode(key, value, randomHeight());
+    newNode.prev = (tails[0] == this.dummy) ? null : tails[0];
+    for (int i = 0; i < newNode.getHeight(); i++) {
+      tails[i].setNext(i, newNode);
+      tails[i] = newNode;
+    } // for
+    this.height = Math.max(this.height, newNode.getHeight());
+    nodeAdded(newNode);
+  } // append(K, V, SLNode<K, V>[])
+
+  /**
+   * Make an array of tails for append(), for a list that is currently empty.
+   */
+  SLNode<K, V>[] emptyTails() {
+    SLNode<K, V>[] tails = newNodeArray(INITIAL_HEIGHT);
+    Arrays.fill(tails, this.dummy);
+    return tails;
+  } // emptyTails()
+
+  /**
+   * Determine if the run of nodes going forward from forwardStart is longer than the run going
+   * backward from backwardStart, in time proportional to the shorter run.
+   */
+  static <K, V> boolean forwardRunLonger(SLNode<K, V> forwardStart, SLNode<K, V> backwardStart) {
+    SLNode<K, V> forward = forwardStart;
+    SLNode<K, V> backward = backwardStart;
+    while (forward != null && backward != null) {
+      forward = forward.next[0];
+      backward = backward.prev;
+    } // while
+    return forward != null;
+  } // forwardRunLonger(SLNode<K, V>, SLNode<K, V>)
+
+  /**
+   * Get an iterator that follows the back pointers from start to the front of the list.
+   */
+  Iterator<SLNode<K, V>> descendingNodes(SLNode<K, V> start) {
+    return new Iterator<SLNode<K, V>>() {
+
       /**
        * A reference to the next node to return.
        */
-      SLNode<K, V> next = SkipList.this.dummy.next(0);
+      SLNode<K, V> next = liveBefore(start);
+
+      /**
+       * The node most recently returned (or null, if there is none or it has been removed).
+       */
+      SLNode<K, V> current = null;
+
+      /**
+       * The predecessors of current at each of its levels, filled in by remove.
+       */
+      SLNode<K, V>[] preds = newNodeArray(INITIAL_HEIGHT);
 
       @Override
       public boolean hasNext() {
@@ -456,88 +2314,120 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
         if (this.next == null) {
           throw new IllegalStateException();
         }
-        SLNode<K, V> temp = this.next;
-        this.next = this.next.next.get(0);
-        return temp;
+        this.current = this.next;
+        this.next = liveBefore(this.next.prev);
+        return this.current;
       } // next();
-    }; // new Iterator
-  }
-
-  private boolean comeBefore(K key1, K key2) {
-    return this.comparator.compare(key1, key2) < 0;
-  }
-
-  // nodes()
-  // +---------+-----------------------------------------------------
-  // | Helpers |
-  // +---------+
-
-} // class SkipList
 
-
-/**
- * Nodes in the skip list.
- */
-class SLNode<K, V> {
-
-  // +--------+------------------------------------------------------
-  // | Fields |
-  // +--------+
+      @Override
+      public void remove() {
+        if (this.current == null) {
+          throw new IllegalStateException();
+        }
+        // we already have the node, so we only need its predecessors: for a short node (most of
+        // them), a few steps back along the prev pointers
+        if (this.current.getHeight() <= WALK_BACK_HEIGHT) {
+          walkBack(this.current, this.preds);
+        } else {
+          this.preds = predecessors(this.current.key);
+        } // if/else
+        unlink(this.current, this.preds);
+        Arrays.fill(this.preds, null);
+        // unlink leaves the back pointer of current alone, so the node before it is still there
+        this.next = liveBefore(this.current.prev);
+        this.current = null;
+      } // remove()
+    }; // new Iterator
+  } // descendingNodes(SLNode<K, V>)
 
   /**
-   * The key.
+   * Find the last node in the list (or null, if the list is empty).
    */
-  K key;
+  SLNode<K, V> lastNode() {
+    SLNode<K, V> temp = this.dummy;
+    for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
+      while (temp.next(currentLevel) != null) {
+        temp = temp.next(currentLevel);
+      }
+    }
+    return (temp == this.dummy) ? null : temp;
+  } // lastNode()
 
   /**
-   * The value.
+   * Find the node with the largest key less than or equal to key (or null, if there is no such
+   * node).
    */
-  V value;
+  SLNode<K, V> floorNode(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    SLNode<K, V> temp = this.dummy;
+    for (int currentLevel = this.height - 1; currentLevel >= 0; currentLevel--) {
+      while (temp.next(currentLevel) != null && !comeBefore(key, temp.next(currentLevel).key)) {
+        temp = temp.next(currentLevel);
+      }
+    }
+    return (temp == this.dummy) ? null : temp;
+  } // floorNode(K)
 
   /**
-   * Pointers to the next nodes.
+   * Write one CSV field, quoting it if it contains a comma, quote, or line break.
    */
-  ArrayList<SLNode<K, V>> next;
-
-  // +--------------+------------------------------------------------
-  // | Constructors |
-  // +--------------+
+  static void writeCsvField(Writer out, String field) throws IOException {
+    if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+        && field.indexOf('\r') < 0) {
+      out.write(field);
+    } else {
+      out.write('"');
+      out.write(field.replace("\"", "\"\""));
+      out.write('"');
+    } // if/else
+  } // writeCsvField(Writer, String)
 
   /**
-   * Create a new node of height n with the specified key and value.
+   * Write one length-prefixed UTF-8 field.
    */
-  public SLNode(K key, V value, int n) {
-    this.key = key;
-    this.value = value;
-    this.next = new ArrayList<SLNode<K, V>>(n);
-    for (int i = 0; i < n; i++) {
-      this.next.add(null);
-    } // for
-  } // SLNode(K, V, int)
+  static void writeBinaryField(DataOutputStream out, String field) throws IOException {
+    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  } // writeBinaryField(DataOutputStream, String)
 
-  // +---------+-----------------------------------------------------
-  // | Methods |
-  // +---------+
-  /*
-   * sort hand to get an element in this.next
+  /**
+   * Skip forward from node past any tombstones.
    */
-  public SLNode<K, V> next(int i) {
-    SkipList.operationCount++;
-    return this.next.get(i);
-  }
+  static <K, V> SLNode<K, V> live(SLNode<K, V> node) {
+    while (node != null && node.deleted) {
+      node = node.next[0];
+    } // while
+    return node;
+  } // live(SLNode<K, V>)
 
-  /*
-   * short cut to set this.next
+  /**
+   * Skip backward from node past any tombstones.
    */
-  public void setNext(int i, SLNode<K, V> newNode) {
-    SkipList.operationCount++;
-    this.next.set(i, newNode);
-  }
+  static <K, V> SLNode<K, V> liveBefore(SLNode<K, V> node) {
+    while (node != null && node.deleted) {
+      node = node.prev;
+    } // while
+    return node;
+  } // liveBefore(SLNode<K, V>)
 
-  /*
-   * return the size of next of this node (also know as this node's height)
+  /**
+   * Make an array of n node references.
    */
-  public int getHeight() {
-    return this.next.size();
+  @SuppressWarnings("unchecked")
+  static <K, V> SLNode<K, V>[] newNodeArray(int n) {
+    return (SLNode<K, V>[]) new SLNode<?, ?>[n];
+  } // newNodeArray(int)
+
+  private boolean comeBefore(K key1, K key2) {
+    return this.comparator.compare(key1, key2) < 0;
   }
-} // SLNode<K,V>
+
+  // nodes()
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+} // class SkipList
@@ -0,0 +1,347 @@
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A skip list that many threads can use without locks. One writer thread owns the list; other
+ * threads send it requests through a bounded queue and get back CompletableFutures.
+ * 
+ * The writer takes requests off the queue in batches and sorts each batch by key, so that
+ * consecutive searches walk mostly the same path. The sort is stable, so requests for the same
+ * key still happen in the order they were made. Futures are completed on the writer thread, so
+ * anything slow should be attached with the *Async methods.
+ * 
+ * Optionally, the writer also publishes a read-only copy of the list every so often, and
+ * snapshotGet reads from that copy without going through the queue at all.
+ */
+public class SkipListEngine<K, V> implements AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The most requests we apply in one batch.
+   */
+  static final int MAX_BATCH = 1024;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list. Only the writer thread touches it.
+   */
+  SkipList<K, V> list;
+
+  /**
+   * Requests waiting for the writer.
+   */
+  BlockingQueue<EngineRequest<K, V>> queue;
+
+  /**
+   * The thread that applies the requests.
+   */
+  Thread writer;
+
+  /**
+   * Set once close() has been called.
+   */
+  volatile boolean closed;
+
+  /**
+   * Submitters hold the read lock while they check closed and enqueue, and close holds the write
+   * lock while it sets closed, so that every request either fails or is queued before the stop
+   * request.
+   */
+  ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+
+  /**
+   * How often (in milliseconds) to publish a snapshot, or a negative number for never.
+   */
+  long snapshotInterval;
+
+  /**
+   * The most recently published snapshot (or null).
+   */
+  volatile SkipList<K, V> snapshot;
+
+  /**
+   * When we last published a snapshot.
+   */
+  long lastSnapshot;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start an engine that owns list, with room for queueCapacity waiting requests.
+   */
+  public SkipListEngine(SkipList<K, V> list, int queueCapacity) {
+    this(list, queueCapacity, -1);
+  } // SkipListEngine(SkipList<K, V>, int)
+
+  /**
+   * Start an engine that owns list, with room for queueCapacity waiting requests, and that
+   * publishes a snapshot for snapshotGet every snapshotInterval milliseconds (if positive).
+   */
+  public SkipListEngine(SkipList<K, V> list, int queueCapacity, long snapshotInterval) {
+    this.list = list;
+    this.queue = new ArrayBlockingQueue<EngineRequest<K, V>>(queueCapacity);
+    this.snapshotInterval = snapshotInterval;
+    if (snapshotInterval >= 0) {
+      publishSnapshot();
+    } // if
+    this.writer = new Thread(this::run, "SkipListEngine writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  } // SkipListEngine(SkipList<K, V>, int, long)
+
+  // +----------------+----------------------------------------------
+  // | Public methods |
+  // +----------------+
+
+  /**
+   * Ask the writer to set key to value. The future completes with the previous value (or null).
+   * Blocks while the queue is full.
+   * 
+   * @throws NullPointerException if the key is null.
+   */
+  public CompletableFuture<V> set(K key, V value) {
+    return submit(EngineRequest.SET, key, value);
+  } // set(K, V)
+
+  /**
+   * Ask the writer to remove key. The future completes with the removed value (or null).
+   * 
+   * @throws NullPointerException if the key is null.
+   */
+  public CompletableFuture<V> remove(K key) {
+    return submit(EngineRequest.REMOVE, key, null);
+  } // remove(K)
+
+  /**
+   * Ask the writer for the value of key. The future completes exceptionally, with an
+   * IndexOutOfBoundsException, if the key is not in the list.
+   * 
+   * @throws NullPointerException if the key is null.
+   */
+  public CompletableFuture<V> get(K key) {
+    return submit(EngineRequest.GET, key, null);
+  } // get(K)
+
+  /**
+   * Get the value of key from the most recent snapshot, without waiting for the writer. The
+   * result may be up to one snapshot interval out of date.
+   * 
+   * @throws IllegalStateException if the engine does not publish snapshots.
+   * @throws IndexOutOfBoundsException if the key is not in the snapshot.
+   */
+  public V snapshotGet(K key) {
+    SkipList<K, V> current = this.snapshot;
+    if (current == null) {
+      throw new IllegalStateException("snapshots are not enabled");
+    } // if
+    return current.get(key);
+  } // snapshotGet(K)
+
+  /**
+   * Finish the requests already in the queue, then stop the writer. Requests made after this
+   * fail with an IllegalStateException. If the calling thread is interrupted, close still waits
+   * for the writer, and then sets the thread's interrupt status again.
+   */
+  @Override
+  public void close() {
+    this.closing.writeLock().lock();
+    try {
+      if (this.closed) {
+        return;
+      } // if
+      this.closed = true;
+    } finally {
+      this.closing.writeLock().unlock();
+    } // try/finally
+    boolean interrupted = false;
+    EngineRequest<K, V> stop = new EngineRequest<K, V>(EngineRequest.STOP, null, null);
+    while (true) {
+      try {
+        this.queue.put(stop);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try/catch
+    } // while
+    while (true) {
+      try {
+        this.writer.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try/catch
+    } // while
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Put a request on the queue.
+   */
+  CompletableFuture<V> submit(int type, K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    EngineRequest<K, V> request = new EngineRequest<K, V>(type, key, value);
+    this.closing.readLock().lock();
+    try {
+      if (this.closed) {
+        request.future.completeExceptionally(new IllegalStateException("engine closed"));
+        return request.future;
+      } // if
+      this.queue.put(request);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      request.future.completeExceptionally(e);
+    } finally {
+      this.closing.readLock().unlock();
+    } // try/catch/finally
+    return request.future;
+  } // submit(int, K, V)
+
+  /**
+   * The writer loop.
+   */
+  void run() {
+    ArrayList<EngineRequest<K, V>> batch = new ArrayList<EngineRequest<K, V>>(MAX_BATCH);
+    boolean stopping = false;
+    while (!stopping) {
+      try {
+        batch.add(this.queue.take());
+      } catch (InterruptedException e) {
+        return;
+      } // try/catch
+      this.queue.drainTo(batch, MAX_BATCH - 1);
+      Throwable sortFailure = null;
+      try {
+        batch.sort((r1, r2) -> compareRequests(r1, r2));
+      } catch (RuntimeException | Error e) {
+        // the comparator threw, so we can't trust the order: fail the batch, but keep going
+        sortFailure = e;
+      } // try/catch
+      for (EngineRequest<K, V> request : batch) {
+        if (request.type == EngineRequest.STOP) {
+          stopping = true;
+        } else if (sortFailure != null) {
+          request.future.completeExceptionally(sortFailure);
+        } else {
+          apply(request);
+        } // if/else
+      } // for
+      batch.clear();
+      if (this.snapshotInterval >= 0
+          && System.currentTimeMillis() - this.lastSnapshot >= this.snapshotInterval) {
+        try {
+          publishSnapshot();
+        } catch (RuntimeException | Error e) {
+          // keep the last good snapshot
+        } // try/catch
+      } // if
+    } // while
+  } // run()
+
+  /**
+   * Order requests by key, with the stop request last.
+   */
+  int compareRequests(EngineRequest<K, V> r1, EngineRequest<K, V> r2) {
+    if (r1.type == EngineRequest.STOP || r2.type == EngineRequest.STOP) {
+      return Boolean.compare(r1.type == EngineRequest.STOP, r2.type == EngineRequest.STOP);
+    } // if
+    return this.list.comparator.compare(r1.key, r2.key);
+  } // compareRequests(EngineRequest<K, V>, EngineRequest<K, V>)
+
+  /**
+   * Apply one request to the list and complete its future. (Whatever the list throws, Errors
+   * included, goes to the future, so the writer outlives it.)
+   */
+  void apply(EngineRequest<K, V> request) {
+    try {
+      V result;
+      if (request.type == EngineRequest.SET) {
+        result = this.list.set(request.key, request.value);
+      } else if (request.type == EngineRequest.REMOVE) {
+        result = this.list.remove(request.key);
+      } else {
+        result = this.list.get(request.key);
+      } // if/else
+      request.future.complete(result);
+    } catch (RuntimeException | Error e) {
+      request.future.completeExceptionally(e);
+    } // try/catch
+  } // apply(EngineRequest<K, V>)
+
+  /**
+   * Publish a fresh copy of the list for snapshotGet.
+   */
+  void publishSnapshot() {
+    this.snapshot = this.list.union(new SkipList<K, V>(this.list.comparator));
+    this.lastSnapshot = System.currentTimeMillis();
+  } // publishSnapshot()
+
+} // class SkipListEngine<K, V>
+
+
+/**
+ * A request waiting for the engine's writer.
+ */
+class EngineRequest<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  static final int SET = 0;
+  static final int REMOVE = 1;
+  static final int GET = 2;
+  static final int STOP = 3;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * What to do (SET, REMOVE, GET, or STOP).
+   */
+  int type;
+
+  /**
+   * The key.
+   */
+  K key;
+
+  /**
+   * The value (for SET).
+   */
+  V value;
+
+  /**
+   * The future to complete when we're done.
+   */
+  CompletableFuture<V> future = new CompletableFuture<V>();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  public EngineRequest(int type, K key, V value) {
+    this.type = type;
+    this.key = key;
+    this.value = value;
+  } // EngineRequest(int, K, V)
+} // EngineRequest<K, V>
@@ -0,0 +1,69 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for one skip list operation. Each kind of operation has its own event
+ * type (SkipList.Get, SkipList.Set, SkipList.Remove and SkipList.Iterate), so that each can be
+ * turned on and given its own threshold in the recording settings, e.g.
+ *
+ * <pre>
+ * recording.enable("SkipList.Get").withThreshold(Duration.ofMillis(5));
+ * </pre>
+ *
+ * or -XX:StartFlightRecording:settings=my.jfc with the same settings in the .jfc file. Only
+ * operations that take at least the threshold (1 ms, unless the settings say otherwise) are
+ * recorded. When no recording has the event enabled, the instrumentation costs a timestamp, two
+ * field reads and a test.
+ */
+@Category({ "Skip List" })
+@StackTrace(false)
+@Threshold("1 ms")
+abstract class SkipListEvent extends Event {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  @Label("Levels Descended")
+  @Description("The height of the list when the operation started (a descent passes each level "
+      + "at most once)")
+  int levels;
+
+  @Label("Nodes Visited")
+  @Description("The number of pointers the operation followed or changed")
+  long nodesVisited;
+
+  @Label("Height")
+  @Description("The height of the list after the operation")
+  int height;
+
+  @Label("Height Changed")
+  @Description("Whether the operation changed the height of the list")
+  boolean heightChanged;
+
+  @Label("Size")
+  @Description("The number of entries after the operation")
+  int size;
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Fill in the fields from the list, given its height and the operation count when the operation
+   * started, and commit the event.
+   */
+  void record(SkipList<?, ?> list, int levels, long operations) {
+    this.levels = levels;
+    this.nodesVisited = SkipList.operationCount - operations;
+    this.height = list.height;
+    this.heightChanged = list.height != levels;
+    this.size = list.size;
+    commit();
+  } // record(SkipList, int, long)
+} // class SkipListEvent
+
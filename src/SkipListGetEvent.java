@@ -0,0 +1,12 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder event for a get or containsKey (see SkipListEvent).
+ */
+@Name("SkipList.Get")
+@Label("Skip List Get")
+@Description("A get or containsKey that took longer than the threshold")
+class SkipListGetEvent extends SkipListEvent {
+} // class SkipListGetEvent
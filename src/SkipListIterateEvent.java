@@ -0,0 +1,12 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder event for a forEach, descendingForEach or removeIf (see SkipListEvent).
+ */
+@Name("SkipList.Iterate")
+@Label("Skip List Iterate")
+@Description("A forEach, descendingForEach or removeIf that took longer than the threshold")
+class SkipListIterateEvent extends SkipListEvent {
+} // class SkipListIterateEvent
@@ -0,0 +1,12 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder event for a remove (see SkipListEvent).
+ */
+@Name("SkipList.Remove")
+@Label("Skip List Remove")
+@Description("A remove that took longer than the threshold")
+class SkipListRemoveEvent extends SkipListEvent {
+} // class SkipListRemoveEvent
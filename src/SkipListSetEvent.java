@@ -0,0 +1,12 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder event for a set (see SkipListEvent).
+ */
+@Name("SkipList.Set")
+@Label("Skip List Set")
+@Description("A set that took longer than the threshold")
+class SkipListSetEvent extends SkipListEvent {
+} // class SkipListSetEvent
@@ -1,7 +1,23 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.Test;
@@ -455,15 +471,1328 @@ public class SkipListTests {
     }
   }
 
+  // +--------------+------------------------------------------------------
+  // | Filter tests |
+  // +--------------+
+
+  // make sure the Bloom filter never hides keys that are in the list, even as it grows and as keys
+  // are removed
+  @Test
+  public void testFilter() {
+    setup();
+    ints.enableFilter(16);
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      int num = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        remove(num);
+        keys.remove((Integer) num);
+      } else {
+        set(num);
+        if (!keys.contains(num)) {
+          keys.add(num);
+        }
+      }
+    }
+    for (int i = 0; i < 5000; i++) {
+      assertTrue("Filter agrees with list for " + i, ints.containsKey(i) == keys.contains(i));
+    }
+    assertTrue("False-positive rate is a rate", ints.filterFalsePositiveRate() < 0.5);
+  }
+
+  // +--------------+------------------------------------------------------
+  // | Memory tests |
+  // +--------------+
+
+  // make sure the memory estimates go back to where they started once everything is removed, and
+  // that the height histogram matches the nodes
+  @Test
+  public void testMemoryAccounting() {
+    setup();
+    long empty = ints.estimatedBytes();
+    for (int i = 0; i < 100; i++) {
+      set(i);
+    }
+    set(5); // overwrite
+    assertTrue("Estimate grows with the list", ints.estimatedBytes() > empty);
+    assertTrue("Node size", SkipList.NODE_BYTES == 32);
+    assertTrue("Node bytes count the dummy too",
+        ints.nodeBytes() == (ints.size() + 1) * SkipList.NODE_BYTES);
+    int[] histogram = ints.heightHistogram();
+    int total = 0;
+    for (int h = 1; h < histogram.length; h++) {
+      total += histogram[h];
+    }
+    assertTrue("Histogram counts every node", total == ints.size());
+    for (int i = 0; i < 100; i++) {
+      remove(i);
+    }
+    assertTrue("Estimate returns to empty", ints.estimatedBytes() == empty);
+  }
+
+  // make sure that a full list calls the spill handler and rejects writes it can't make room for
+  @Test
+  public void testMemoryBudget() {
+    setup();
+    ArrayList<Integer> spilled = new ArrayList<Integer>();
+    ints.setMemoryBudget(ints.estimatedBytes() + 2000, (list, needed) -> {
+      long target = list.estimatedBytes() - needed;
+      while (list.size() > 0 && list.estimatedBytes() > target) {
+        Integer first = list.keys().next();
+        spilled.add(first);
+        list.remove(first);
+      }
+    });
+    for (int i = 0; i < 100; i++) {
+      set(i);
+    }
+    assertFalse("Some entries were spilled", spilled.isEmpty());
+    assertTrue("Spilled entries are gone", spilled.size() + ints.size() == 100);
+    ints.setMemoryBudget(ints.estimatedBytes(), null);
+    assertThrows(IllegalStateException.class, () -> ints.set(1000, "too much"));
+  }
+
+  // +-----------------------------+-----------------------------------------
+  // | Descending iteration tests |
+  // +-----------------------------+
+
+  // make sure the back pointers survive random adds and removes
+  @Test
+  public void testDescendingKeys() {
+    setup();
+    for (int i = 0; i < 500; i++) {
+      int num = random.nextInt(200);
+      if (random.nextBoolean()) {
+        set(num);
+      } else {
+        remove(num);
+      }
+    }
+    ArrayList<Integer> forward = new ArrayList<Integer>();
+    ints.keys().forEachRemaining(forward::add);
+    ArrayList<Integer> backward = new ArrayList<Integer>();
+    ints.descendingKeys().forEachRemaining((key) -> backward.add(0, key));
+    assertTrue("Descending keys reverse the keys", forward.equals(backward));
+  }
+
+  // make sure that a reverse range scan starts at the right key
+  @Test
+  public void testDescendingFrom() {
+    setup();
+    for (int i = 0; i < 100; i += 2) {
+      set(i);
+    }
+    Iterator<Integer> it = ints.descendingKeys(51);
+    assertTrue("Starts at the floor of the key", it.next() == 50);
+    assertTrue("Then goes backwards", it.next() == 48);
+    assertTrue("Starts at the key itself", ints.descendingKeys(40).next() == 40);
+    assertFalse("Nothing comes before the first key", ints.descendingKeys(-1).hasNext());
+    ArrayList<Integer> all = new ArrayList<Integer>();
+    ints.descendingForEach((key, value) -> all.add(key));
+    assertTrue("descendingForEach visits everything", all.size() == 50 && all.get(0) == 98);
+  }
+
+  // +-----------------------+-----------------------------------------------
+  // | Iterator removal tests |
+  // +-----------------------+
+
+  // remove every third key through the iterator and make sure the list is still sound
+  @Test
+  public void testIteratorRemove() {
+    setup();
+    for (int i = 0; i < 300; i++) {
+      set(i);
+    }
+    Iterator<Integer> it = ints.keys();
+    while (it.hasNext()) {
+      if (it.next() % 3 == 0) {
+        it.remove();
+      }
+    }
+    assertTrue("Size after iterator removal", ints.size() == 200);
+    for (int i = 0; i < 300; i++) {
+      assertTrue("Contains after iterator removal", ints.containsKey(i) == (i % 3 != 0));
+    }
+    assertTrue("Still in order", inOrder(ints.keys()));
+    checkHeight(ints);
+    assertThrows(IllegalStateException.class, () -> ints.values().remove());
+  }
+
+  // remove every third key through a descending iterator and make sure the list is still sound
+  @Test
+  public void testDescendingIteratorRemove() {
+    setup();
+    for (int i = 0; i < 3000; i++) {
+      set(i);
+    }
+    int seen = 0;
+    Iterator<Integer> it = ints.descendingKeys();
+    while (it.hasNext()) {
+      int key = it.next();
+      assertTrue("Descending order", key == 2999 - seen++);
+      if (key % 3 == 0) {
+        it.remove();
+      }
+    }
+    assertTrue("Size after iterator removal", ints.size() == 2000);
+    for (int i = 0; i < 3000; i++) {
+      assertTrue("Contains after iterator removal", ints.containsKey(i) == (i % 3 != 0));
+    }
+    assertTrue("Back pointers", ints.descendingKeys().next() == 2999);
+    checkHeight(ints);
+  }
+
+  // make sure removeIf removes exactly the matching entries, including the first and last
+  @Test
+  public void testRemoveIf() {
+    setup();
+    for (int i = 0; i < 100; i++) {
+      set(i);
+    }
+    assertTrue("removeIf counts", ints.removeIf((key, value) -> key < 10 || key >= 90) == 20);
+    assertTrue("Size after removeIf", ints.size() == 80);
+    assertFalse(ints.containsKey(0));
+    assertFalse(ints.containsKey(99));
+    assertTrue(ints.containsKey(50));
+    assertTrue("Back pointers after removeIf", ints.descendingKeys().next() == 89);
+    assertTrue("removeIf can empty the list", ints.removeIf((key, value) -> true) == 80);
+    assertTrue(ints.size() == 0 && ints.height == 0);
+  }
+
+  // +--------------------+--------------------------------------------------
+  // | List algebra tests |
+  // +--------------------+
+
+  // make sure union, intersect and difference agree with what we'd get one key at a time
+  @Test
+  public void testSetOperations() {
+    setup();
+    SkipList<Integer, String> evens = new SkipList<Integer, String>((i, j) -> i - j);
+    for (int i = 0; i < 100; i++) {
+      if (i % 2 == 0) {
+        evens.set(i, "even");
+      }
+      if (i % 3 == 0) {
+        set(i);
+      }
+    }
+    SkipList<Integer, String> union = ints.union(evens);
+    SkipList<Integer, String> intersection = ints.intersect(evens);
+    SkipList<Integer, String> difference = ints.difference(evens);
+    for (int i = 0; i < 100; i++) {
+      assertTrue("union", union.containsKey(i) == (i % 2 == 0 || i % 3 == 0));
+      assertTrue("intersect", intersection.containsKey(i) == (i % 6 == 0));
+      assertTrue("difference", difference.containsKey(i) == (i % 3 == 0 && i % 2 != 0));
+    }
+    assertTrue("union prefers the other list", union.get(6).equals("even"));
+    assertTrue("intersect keeps this list's values", intersection.get(6).equals(value(6)));
+    assertTrue("union size", union.size() == 67);
+    assertTrue("union in order", inOrder(union.keys()));
+    checkHeight(union);
+  }
+
+  // split a list in several places and glue it back together
+  @Test
+  public void testSplitConcat() {
+    setup();
+    for (int i = 0; i < 200; i++) {
+      set(i);
+    }
+    long bytes = ints.estimatedBytes();
+    for (int cut : new int[] {-5, 0, 10, 100, 190, 199, 500}) {
+      SkipList<Integer, String> tail = ints.split(cut);
+      int expected = Math.max(0, Math.min(200, cut));
+      assertTrue("size of head after split at " + cut, ints.size() == expected);
+      assertTrue("size of tail after split at " + cut, tail.size() == 200 - expected);
+      assertTrue("head ends before the cut", !ints.containsKey(cut) || cut >= 200);
+      checkHeight(ints);
+      checkHeight(tail);
+      ints.concat(tail);
+      assertTrue("concat empties the other list", tail.size() == 0);
+      assertTrue("size after concat", ints.size() == 200);
+      assertTrue("memory after concat", ints.estimatedBytes() == bytes);
+      assertTrue("in order after concat", inOrder(ints.keys()));
+      assertTrue("back pointers after concat", ints.descendingKeys().next() == 199);
+    }
+    SkipList<Integer, String> other = new SkipList<Integer, String>((i, j) -> i - j);
+    other.set(5, "five");
+    assertThrows(IllegalArgumentException.class, () -> ints.concat(other));
+  }
+
+  // +--------------+------------------------------------------------------
+  // | Export tests |
+  // +--------------+
+
+  // make sure toString keeps its format and can be capped
+  @Test
+  public void testToString() {
+    setup();
+    assertTrue("Empty list", ints.toString().equals(""));
+    set(2);
+    set(1);
+    assertTrue("Two entries", ints.toString().equals(", (1 one), (2 two)"));
+    assertTrue("Capped", ints.toString(1).equals(", (1 one), ..."));
+  }
+
+  // make sure the CSV and binary exports contain every entry
+  @Test
+  public void testWriteTo() throws Exception {
+    setup();
+    set("a,b");
+    set("c");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    strings.writeTo(bytes, ExportFormat.CSV);
+    assertTrue("CSV", bytes.toString("UTF-8").equals("key,value\n\"a,b\",\"A,B\"\nc,C\n"));
+    bytes.reset();
+    strings.writeTo(bytes, ExportFormat.BINARY);
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertTrue("Binary count", in.readInt() == 2);
+    assertTrue("Binary key length", in.readInt() == 3);
+    assertTrue("Binary size", bytes.size() == 4 + 4 * 4 + 3 + 3 + 1 + 1);
+  }
+
+  // +--------------+------------------------------------------------------
+  // | Engine tests |
+  // +--------------+
+
+  // make sure the engine applies requests for the same key in order
+  @Test
+  public void testEngine() throws Exception {
+    setup();
+    SkipListEngine<Integer, String> engine = new SkipListEngine<Integer, String>(ints, 16, 0);
+    for (int i = 0; i < 100; i++) {
+      engine.set(i % 10, "v" + i);
+    }
+    assertTrue("Last set wins", engine.get(3).get().equals("v93"));
+    assertTrue("Remove returns the value", engine.remove(3).get().equals("v93"));
+    assertTrue("Missing keys fail the future", engine.get(3).handle((value, e) -> e != null).get());
+    engine.close();
+    assertTrue("Engine owned the list", ints.size() == 9);
+    assertTrue("Closed engine rejects requests", engine.set(1, "x").isCompletedExceptionally());
+  }
+
+  // close the engine while other threads submit, and make sure every future still completes;
+  // close an engine from an interrupted thread, and make sure the interrupt status survives
+  @Test
+  public void testEngineCloseRace() throws Exception {
+    setup();
+    SkipListEngine<Integer, String> engine = new SkipListEngine<Integer, String>(ints, 4);
+    ArrayList<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      int first = t * 10000;
+      threads[t] = new Thread(() -> {
+        for (int i = first; i < first + 10000; i++) {
+          CompletableFuture<String> future = engine.set(i, "v");
+          synchronized (futures) {
+            futures.add(future);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    Thread.sleep(5);
+    engine.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (CompletableFuture<String> future : futures) {
+      assertTrue("Every request completes", future.isDone());
+    }
+
+    SkipListEngine<Integer, String> other = new SkipListEngine<Integer, String>(ints, 4);
+    Thread.currentThread().interrupt();
+    other.close();
+    assertTrue("Interrupt status restored", Thread.interrupted());
+    assertTrue("Closed engine rejects requests", other.set(1, "x").isCompletedExceptionally());
+  }
+
+  // make sure a comparator that throws (even an Error) fails only the requests it touches, and
+  // leaves the writer running
+  @Test
+  public void testEngineThrowingComparator() throws Exception {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> {
+      if (i == 13 || j == 13) {
+        throw new IllegalArgumentException("unlucky");
+      } else if (i == 99 || j == 99) {
+        throw new AssertionError("very unlucky");
+      }
+      return i - j;
+    });
+    list.set(0, "v"); // (so that every other key is compared with something)
+    SkipListEngine<Integer, String> engine = new SkipListEngine<Integer, String>(list, 4, 0);
+    ArrayList<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+    for (int i = 0; i < 2000; i++) {
+      futures.add(engine.set(i % 100, "v"));
+    }
+    for (CompletableFuture<String> future : futures) {
+      future.handle((value, e) -> e).get(10, TimeUnit.SECONDS);
+    }
+    assertTrue("Unlucky keys fail", engine.get(13).handle((value, e) -> e != null).get()
+        && engine.get(99).handle((value, e) -> e instanceof AssertionError).get());
+    assertTrue("Writer still running", engine.set(1000, "v").get(10, TimeUnit.SECONDS) == null);
+    engine.close();
+    assertTrue("Writer stopped", !engine.writer.isAlive());
+  }
+
+  // make sure flat combining loses no writes when several threads write at once
+  @Test
+  public void testFlatCombining() throws Exception {
+    setup();
+    FlatCombiningMap<Integer, String> map = new FlatCombiningMap<Integer, String>(ints);
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      int base = t * 1000;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 500; i++) {
+          map.set(base + i, "v");
+        }
+        for (int i = 0; i < 500; i += 2) {
+          map.remove(base + i);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue("Every thread's writes arrived", map.size() == 1000);
+    assertTrue(map.containsKey(3001));
+    assertFalse(map.containsKey(3000));
+    assertThrows(IndexOutOfBoundsException.class, () -> map.get(3000));
+  }
+
+  // make sure a comparator that throws while the combiner sorts its batch fails every operation
+  // in the batch (once), and that threads using the map then carry on
+  @Test
+  public void testFlatCombiningThrowingComparator() throws Exception {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> {
+      if (i == 13 || j == 13) {
+        throw new IllegalArgumentException("unlucky");
+      }
+      return i - j;
+    });
+    FlatCombiningMap<Integer, String> map = new FlatCombiningMap<Integer, String>(list);
+    ArrayList<CombiningSlot<Integer, String>> gathered =
+        new ArrayList<CombiningSlot<Integer, String>>();
+    for (int key : new int[] { 5, 13, 7 }) {
+      CombiningSlot<Integer, String> slot = new CombiningSlot<Integer, String>();
+      slot.op = CombiningSlot.SET;
+      slot.key = key;
+      slot.value = "v";
+      slot.active = true;
+      slot.pending = true;
+      map.slots.add(slot);
+      gathered.add(slot);
+    }
+    map.lock.lock();
+    try {
+      map.combine();
+    } finally {
+      map.lock.unlock();
+    }
+    for (CombiningSlot<Integer, String> slot : gathered) {
+      assertTrue("Completed with the failure",
+          !slot.pending && slot.failure instanceof IllegalArgumentException);
+    }
+    assertTrue("Batch cleared", map.batch.isEmpty());
+    assertTrue("Nothing applied", list.size() == 0);
+    map.slots.clear();
+    list.set(0, "v"); // (so that setting 13 always compares it with something)
+
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      int base = t * 100;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          try {
+            map.set((i % 10 == 0) ? 13 : base + i % 100, "v");
+          } catch (IllegalArgumentException e) {
+            // the unlucky key, or a key sorted next to it
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join(10000);
+      assertTrue("No thread hangs", !thread.isAlive());
+    }
+    assertTrue("Map still works", map.set(1000, "v") == null && map.get(1000).equals("v"));
+  }
+
+  // make sure the slots of threads that have gone away are retired, and that a thread whose slot
+  // was retired can still use the map
+  @Test
+  public void testFlatCombiningRetiresSlots() throws Exception {
+    setup();
+    FlatCombiningMap<Integer, String> map = new FlatCombiningMap<Integer, String>(ints);
+    map.set(-1, "idle");
+    for (int t = 0; t < 100; t++) {
+      int key = t;
+      Thread thread = new Thread(() -> map.set(key, "v"));
+      thread.start();
+      thread.join();
+    }
+    assertTrue("A slot for each thread", map.slots.size() == 101);
+    Thread busy = new Thread(() -> {
+      for (int i = 0; i <= FlatCombiningMap.RETIRE_PASSES; i++) {
+        map.get(i % 100);
+      }
+    });
+    busy.start();
+    busy.join();
+    assertTrue("Idle slots retired, " + map.slots.size() + " left", map.slots.size() == 1);
+    assertTrue("Retired slot comes back", map.remove(-1).equals("idle") && map.slots.size() == 2);
+    assertTrue("Size", map.size() == 100);
+  }
+
+  // +----------------+----------------------------------------------------
+  // | Adaptive tests |
+  // +----------------+
+
+  // make sure a frequently read key grows, and that reshaping never loses keys
+  @Test
+  public void testAdaptive() {
+    setup();
+    for (int i = 0; i < 1000; i++) {
+      set(i);
+    }
+    ints.setAdaptive(true);
+    for (int i = 0; i < 5000; i++) {
+      ints.get(500);
+      ints.get(random.nextInt(1000));
+      if (i % 10 == 0) {
+        // leave the hot key alone, since re-adding it would start its count over
+        int num = 501 + random.nextInt(499);
+        remove(num);
+        set(num);
+      }
+    }
+    assertTrue("Hot key is promoted", ints.findNode(500).getHeight() >= 8);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue("Adaptive list keeps " + i, ints.containsKey(i));
+    }
+    assertTrue("Still in order", inOrder(ints.keys()));
+    checkHeight(ints);
+    assertTrue("Counts only for nodes read", ints.accessCounts.size() <= ints.size());
+    for (int i = 0; i < 1000; i++) {
+      remove(i);
+    }
+    assertTrue("Removed nodes lose their counts", ints.accessCounts.isEmpty());
+    ints.setAdaptive(false);
+    assertTrue("Only adaptive lists keep counts", ints.accessCounts == null);
+  }
+
+  // +----------------------+----------------------------------------------
+  // | Learned index tests |
+  // +----------------------+
+
+  // make sure lookups through the learned index stay right as keys come and go
+  @Test
+  public void testLearnedIndex() {
+    setup();
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int i = 0; i < 2000; i++) {
+      int num = random.nextInt(20000);
+      set(num);
+      keys.add(num);
+    }
+    ints.enableLearnedIndex();
+    for (int i = 0; i < 4000; i++) {
+      int num = random.nextInt(20000);
+      if (random.nextBoolean()) {
+        set(num);
+        keys.add(num);
+      } else {
+        remove(num);
+        keys.removeIf((key) -> key == num);
+      }
+      int probe = keys.get(random.nextInt(keys.size()));
+      assertTrue("Learned index finds " + probe, ints.containsKey(probe));
+    }
+    for (int i = 0; i < 20000; i += 3) {
+      assertTrue("Learned index agrees for " + i, ints.containsKey(i) == keys.contains(i));
+    }
+  }
+
+  // make sure an index trained on an empty list survives removing the tall nodes added later
+  @Test
+  public void testLearnedIndexFromEmpty() {
+    setup();
+    ints.enableLearnedIndex();
+    for (int i = 0; i < 2000; i++) {
+      set(i);
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      remove(i);
+    }
+    assertTrue("Size", ints.size() == 1000);
+    for (int i = 0; i < 2000; i++) {
+      assertTrue("Learned index agrees for " + i, ints.containsKey(i) == (i % 2 == 1));
+    }
+    // retraining after split empties the list leaves the anchors empty again
+    ints.split(0);
+    set(5);
+    remove(5);
+    assertTrue("Empty", ints.size() == 0);
+  }
+
+  // +--------------------+--------------------------------------------------
+  // | Lazy delete tests |
+  // +--------------------+
+
+  // make sure tombstones are invisible and get compacted away
+  @Test
+  public void testLazyDelete() {
+    setup();
+    ints.setTombstoneRatio(0.5);
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int i = 0; i < 2000; i++) {
+      int num = random.nextInt(300);
+      if (random.nextBoolean()) {
+        set(num);
+        if (!keys.contains(num)) {
+          keys.add(num);
+        }
+      } else {
+        remove(num);
+        keys.remove((Integer) num);
+      }
+      assertTrue("Size counts live entries", ints.size() == keys.size());
+    }
+    ArrayList<Integer> seen = new ArrayList<Integer>();
+    ints.keys().forEachRemaining(seen::add);
+    assertTrue("Iteration skips tombstones", seen.size() == keys.size());
+    ArrayList<Integer> descending = new ArrayList<Integer>();
+    ints.descendingForEach((key, value) -> descending.add(key));
+    assertTrue("Descending iteration skips tombstones", descending.size() == keys.size());
+    for (int i = 0; i < 300; i++) {
+      assertTrue("Lazy list agrees for " + i, ints.containsKey(i) == keys.contains(i));
+    }
+    assertTrue("Compaction keeps tombstones in check",
+        ints.tombstones() < 0.5 * (ints.size() + ints.tombstones()) + 1);
+    ints.compact();
+    assertTrue("Compaction removes every tombstone", ints.tombstones() == 0);
+    checkHeight(ints);
+    assertTrue(inOrder(ints.keys()));
+  }
+
+  // +---------------------------+---------------------------------------------
+  // | Prefix-compressed strings |
+  // +---------------------------+
+
+  // make sure front-coded keys survive inserts and removes next to them
+  @Test
+  public void testStringSkipList() {
+    StringSkipList<Integer> strings = new StringSkipList<Integer>();
+    TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+    String[] prefixes = { "http://example.com/", "http://example.com/a/", "http://example.org/",
+        "", "\u00e9t\u00e9/" };
+    for (int i = 0; i < 3000; i++) {
+      String key = prefixes[random.nextInt(prefixes.length)] + random.nextInt(200);
+      if (random.nextInt(3) == 0) {
+        assertTrue("Remove " + key, Objects.equals(strings.remove(key), expected.remove(key)));
+      } else {
+        strings.set(key, i);
+        expected.put(key, i);
+      }
+      assertTrue("Size after " + key, strings.size() == expected.size());
+    }
+    for (String key : expected.keySet()) {
+      assertTrue("Get " + key, strings.get(key).equals(expected.get(key)));
+    }
+    assertTrue("Missing key", !strings.containsKey("http://example.com/a"));
+    ArrayList<String> keys = new ArrayList<String>();
+    strings.keys().forEachRemaining(keys::add);
+    assertTrue("Keys decode in order", keys.equals(new ArrayList<String>(expected.keySet())));
+  }
+
+  // +-----------------+-------------------------------------------------------
+  // | Value log tests |
+  // +-----------------+
+
+  // make sure values read back from the log survive overwrites and collection
+  @Test
+  public void testValueLog() throws Exception {
+    Path file = Files.createTempFile("values", ".log");
+    try (ValueLogMap<Integer> blobs = new ValueLogMap<Integer>((i, j) -> i - j, file)) {
+      int[] versions = new int[50];
+      for (int round = 0; round < 20; round++) {
+        for (int key = 0; key < versions.length; key++) {
+          if (random.nextInt(4) == 0) {
+            blobs.remove(key);
+            versions[key] = 0;
+          } else {
+            versions[key] = round + 1;
+            blobs.set(key, blob(key, versions[key]));
+          }
+        }
+      }
+      assertTrue("Garbage is collected", blobs.logBytes() < 20 * versions.length * 5000);
+      for (int key = 0; key < versions.length; key++) {
+        assertTrue("Log agrees for " + key, blobs.containsKey(key) == (versions[key] != 0));
+        if (versions[key] != 0) {
+          assertTrue("Value of " + key, blobs.get(key).equals(blob(key, versions[key])));
+        }
+      }
+      blobs.set(3, blob(3, 99));
+      ByteBuffer before = blobs.get(3);
+      blobs.collect();
+      assertTrue("Old views survive collection", before.equals(blobs.get(3)));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  // +-----------------+-------------------------------------------------------
+  // | Load test tests |
+  // +-----------------+
+
+  // make sure the latency histogram reports percentiles to within its precision
+  @Test
+  public void testLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 10);
+    }
+    assertTrue("Count", histogram.count() == 100000);
+    assertTrue("Max", histogram.max() == 1000000);
+    long p50 = histogram.valueAtPercentile(50);
+    long p999 = histogram.valueAtPercentile(99.9);
+    assertTrue("p50 is " + p50, Math.abs(p50 - 500000) <= 500000 / 50);
+    assertTrue("p99.9 is " + p999, Math.abs(p999 - 999000) <= 999000 / 50);
+  }
+
+  // make sure a short run exercises every kind of operation the workload asks for
+  @Test
+  public void testLoadTest() throws Exception {
+    SkipList<Long, String> map = new SkipList<Long, String>((i, j) -> Long.compare(i, j));
+    LoadTest test = new LoadTest(map, Workload.D);
+    test.records = 1000;
+    test.seconds = 0.2;
+    test.warmup = 0;
+    LatencyHistogram[] results = test.run();
+    assertTrue("Reads ran", results[0].count() > 0);
+    assertTrue("Inserts ran", results[2].count() > 0);
+    assertTrue("Nothing else ran", results[1].count() + results[3].count() == 0);
+    assertTrue("Inserts add keys", map.size() == 1000 + results[2].count());
+  }
+
+  // make sure scans start at the key and go up, whichever map the load test drives
+  @Test
+  public void testScanFromKey() throws Exception {
+    setup();
+    for (int i = 0; i < 100; i += 2) {
+      set(i);
+    }
+    Iterator<Integer> keys = ints.keys(31);
+    assertTrue("Starts at the ceiling", keys.next() == 32 && keys.next() == 34);
+    keys.remove();
+    assertTrue("Removed through the iterator", !ints.containsKey(34) && keys.next() == 36);
+    assertTrue("Values", ints.values(98).next().equals(value(98)) && !ints.values(99).hasNext());
+    assertTrue("In order", inOrder(ints.keys(0)));
+    checkHeight(ints);
+
+    LockedMap<Integer, String> locked = new LockedMap<Integer, String>(ints);
+    Iterator<String> values = locked.values(50, 3);
+    assertTrue("Locked scan", values.next().equals(value(50)) && values.next().equals(value(52))
+        && values.next().equals(value(54)) && !values.hasNext());
+    FlatCombiningMap<Integer, String> combining = new FlatCombiningMap<Integer, String>(ints);
+    values = combining.values(95, 10);
+    assertTrue("Combining scan", values.next().equals(value(96)) && values.next().equals(value(98))
+        && !values.hasNext());
+
+    LoadTest test =
+        new LoadTest(new LockedMap<Long, String>(new SkipList<Long, String>(Long::compare)),
+            Workload.E);
+    for (long i = 0; i < 10; i++) {
+      test.map.set(i, "x");
+    }
+    assertTrue("Load test scans up from the key", test.scan(7L, 100) == 3);
+    assertThrows(IllegalArgumentException.class, () -> LoadTest.main(new String[] { "--map" }));
+    assertThrows(IllegalArgumentException.class,
+        () -> LoadTest.main(new String[] { "--map", "hashmap" }));
+    ArenaSkipList<Long, String> arena = new ArenaSkipList<Long, String>(Long::compare);
+    LoadTest unscannable = new LoadTest(new LockedMap<Long, String>(arena), Workload.E);
+    assertThrows(IllegalArgumentException.class, () -> unscannable.run());
+    assertTrue("Rejected before loading", arena.size() == 0);
+  }
+
+  // +-----------------+-------------------------------------------------------
+  // | Aggregate tests |
+  // +-----------------+
+
+  // make sure range sums and maxima agree with a walk over the range
+  @Test
+  public void testAggregates() {
+    AggregateSkipList<Integer, Integer, Long> sums =
+        new AggregateSkipList<Integer, Integer, Long>((i, j) -> i - j, (v) -> (long) v, 0L,
+            Long::sum);
+    AggregateSkipList<Integer, Integer, Integer> maxima =
+        new AggregateSkipList<Integer, Integer, Integer>((i, j) -> i - j, (v) -> v,
+            Integer.MIN_VALUE, Math::max);
+    TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    for (int i = 0; i < 3000; i++) {
+      int key = random.nextInt(500);
+      if (random.nextInt(3) == 0) {
+        sums.remove(key);
+        maxima.remove(key);
+        expected.remove(key);
+      } else {
+        int value = random.nextInt(1000);
+        sums.set(key, value);
+        maxima.set(key, value);
+        expected.put(key, value);
+      }
+      int from = random.nextInt(520) - 10;
+      int to = from + random.nextInt(200);
+      long sum = 0;
+      int max = Integer.MIN_VALUE;
+      for (int value : expected.subMap(from, true, to, true).values()) {
+        sum += value;
+        max = Math.max(max, value);
+      }
+      assertTrue("Sum of [" + from + ", " + to + "]", sums.aggregate(from, to) == sum);
+      assertTrue("Max of [" + from + ", " + to + "]", maxima.aggregate(from, to) == max);
+    }
+    long total = 0;
+    for (int value : expected.values()) {
+      total += value;
+    }
+    assertTrue("Total", sums.aggregate() == total);
+    assertTrue("Empty range", sums.aggregate(10, 5) == 0);
+  }
+
+  // +-------------------------+-----------------------------------------------
+  // | Secondary index tests |
+  // +-------------------------+
+
+  // make sure an index on the values follows sets, overwrites, removes and lazy deletes
+  @Test
+  public void testSecondaryIndex() {
+    setup();
+    SecondaryIndex<Integer, String, Integer> lengths =
+        ints.addIndex((value) -> value.length(), (i, j) -> i - j);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 3000; i++) {
+      if (i == 1500) {
+        ints.setTombstoneRatio(0.3);
+      }
+      int key = random.nextInt(400);
+      if (random.nextInt(3) == 0) {
+        ints.remove(key);
+        expected.remove(key);
+      } else {
+        String value = "x".repeat(random.nextInt(20));
+        ints.set(key, value);
+        expected.put(key, value);
+      }
+    }
+    assertTrue("Index size", lengths.size() == expected.size());
+    for (int length = 0; length < 20; length++) {
+      ArrayList<Integer> keys = new ArrayList<Integer>();
+      for (int key : expected.keySet()) {
+        if (expected.get(key).length() == length) {
+          keys.add(key);
+        }
+      }
+      assertTrue("Keys with length " + length, lengths.keysEqualTo(length).equals(keys));
+    }
+    ArrayList<Integer> between = new ArrayList<Integer>();
+    for (int length = 5; length <= 8; length++) {
+      between.addAll(lengths.keysEqualTo(length));
+    }
+    assertTrue("Range query", lengths.keysBetween(5, 8).equals(between));
+    SkipList<Integer, String> rest = ints.split(200);
+    assertTrue("Split unindexes the moved entries",
+        lengths.size() == expected.headMap(200).size() && rest.size() > 0);
+  }
+
+  // +---------------------+---------------------------------------------------
+  // | Deterministic tests |
+  // +---------------------+
+
+  // make sure deterministic mode keeps every gap at one to three nodes
+  @Test
+  public void testDeterministic() {
+    setup();
+    for (int i = 0; i < 100; i++) {
+      set(random.nextInt(1000));
+    }
+    ints.setDeterministic(true);
+    checkGaps(ints);
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    ints.keys().forEachRemaining(keys::add);
+    for (int i = 0; i < 5000; i++) {
+      int num = random.nextInt(1000);
+      if (random.nextInt(5) < 2) {
+        remove(num);
+        keys.remove((Integer) num);
+      } else {
+        set(num);
+        if (!keys.contains(num)) {
+          keys.add(num);
+        }
+      }
+      if (i % 100 == 0) {
+        checkGaps(ints);
+      }
+    }
+    checkGaps(ints);
+    checkHeight(ints);
+    assertTrue("Size", ints.size() == keys.size());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue("Deterministic list agrees for " + i, ints.containsKey(i) == keys.contains(i));
+    }
+    assertTrue("In order", inOrder(ints.keys()));
+    ints.removeIf((key, value) -> key % 3 == 0);
+    set(1001);
+    checkGaps(ints);
+    for (int key : keys) {
+      remove(key);
+    }
+    remove(1001);
+    assertTrue("Empty", ints.size() == 0 && ints.height == 0);
+  }
+
+  // +---------------------+---------------------------------------------------
+  // | Change stream tests |
+  // +---------------------+
+
+  // make sure subscribers see every change, in order, with the values it replaced
+  @Test
+  public void testChangeStream() throws Exception {
+    setup();
+    set(1);
+    ChangeSubscription<Integer, String> changes = ints.subscribe(100);
+    ints.set(2, "two");
+    ints.set(2, "deux");
+    ints.remove(1);
+    ints.remove(5);
+    ints.setTombstoneRatio(0.9);
+    ints.remove(2);
+    ints.set(2, "zwei");
+    List<Mutation<Integer, String>> batch = changes.poll(10, 1, TimeUnit.SECONDS);
+    assertTrue("Batch of " + batch.size(), batch.size() == 5);
+    assertTrue("Insert", batch.get(0).kind == Mutation.Kind.SET && batch.get(0).oldValue == null);
+    assertTrue("Overwrite",
+        batch.get(1).value.equals("deux") && batch.get(1).oldValue.equals("two"));
+    assertTrue("Remove", batch.get(2).kind == Mutation.Kind.REMOVE && batch.get(2).key == 1);
+    assertTrue("Lazy remove", batch.get(3).kind == Mutation.Kind.REMOVE && batch.get(3).key == 2);
+    assertTrue("Revival", batch.get(4).kind == Mutation.Kind.SET && batch.get(4).sequence == 5);
+    changes.close();
+    ints.set(3, "three");
+    assertTrue("Closed", changes.pending() == 0);
+  }
+
+  // interrupt a remove that waits for a slow subscriber, and make sure the remove still finishes
+  // (with the hash index and filter up to date) and the interrupt status survives
+  @Test
+  public void testChangeStreamInterrupted() throws Exception {
+    setup();
+    ints.setHybrid(true);
+    ints.enableFilter(100);
+    set(1);
+    set(2);
+    ChangeSubscription<Integer, String> changes = ints.subscribe(1);
+    ints.set(3, "three");
+    Thread.currentThread().interrupt();
+    new Thread(() -> {
+      try {
+        Thread.sleep(50);
+        changes.poll(10, 0, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        // the test fails below
+      }
+    }).start();
+    ints.remove(1);
+    assertTrue("Interrupt status restored", Thread.interrupted());
+    assertTrue("Removed", !ints.containsKey(1) && ints.containsKey(2) && ints.size() == 2);
+    List<Mutation<Integer, String>> batch = changes.poll(10, 1, TimeUnit.SECONDS);
+    assertTrue("Remove published", batch.size() == 1 && batch.get(0).key == 1);
+    changes.close();
+  }
+
+  // make sure a follower ends up with the same entries as its leader
+  @Test
+  public void testReplication() throws Exception {
+    setup();
+    for (int i = 0; i < 500; i++) {
+      set(random.nextInt(1000));
+    }
+    SkipList<Integer, String> copy = new SkipList<Integer, String>((i, j) -> i - j);
+    try (ReplicationFollower<Integer, String> follower =
+        new ReplicationFollower<Integer, String>(copy, Codec.INTEGER, Codec.STRING, 0);
+        ReplicationLeader<Integer, String> leader = new ReplicationLeader<Integer, String>(ints,
+            Codec.INTEGER, Codec.STRING, "localhost", follower.port(), 64)) {
+      for (int i = 0; i < 5000; i++) {
+        int num = random.nextInt(1000);
+        if (random.nextBoolean()) {
+          set(num);
+        } else {
+          remove(num);
+        }
+      }
+      assertTrue("Follower catches up", leader.awaitCaughtUp(10, TimeUnit.SECONDS));
+      assertTrue("No lag", leader.lagMutations() == 0);
+      assertTrue("Same entries", follower.read((list) -> list.toString()).equals(ints.toString()));
+    }
+  }
+
+  // make sure a follower that has only been sent the snapshot still counts as behind until it has
+  // applied all of it
+  @Test
+  public void testReplicationSnapshotOnly() throws Exception {
+    setup();
+    for (int i = 0; i < 20000; i++) {
+      set(i);
+    }
+    SkipList<Integer, String> copy = new SkipList<Integer, String>((i, j) -> i - j);
+    try (ReplicationFollower<Integer, String> follower =
+        new ReplicationFollower<Integer, String>(copy, Codec.INTEGER, Codec.STRING, 0);
+        ReplicationLeader<Integer, String> leader = new ReplicationLeader<Integer, String>(ints,
+            Codec.INTEGER, Codec.STRING, "localhost", follower.port(), 64)) {
+      assertTrue("Follower catches up", leader.awaitCaughtUp(10, TimeUnit.SECONDS));
+      assertTrue("No lag", leader.lagMutations() == 0);
+      assertTrue("Whole snapshot applied", follower.read((list) -> list.size()) == 20000);
+    }
+  }
+
+  // +-----------------------+-----------------------------------------------
+  // | Flight Recorder tests |
+  // +-----------------------+
+
+  // make sure operations over the threshold are recorded, with what they did to the list
+  @Test
+  public void testFlightRecorder() throws Exception {
+    setup();
+    Path file = Files.createTempFile("skiplist", ".jfr");
+    try (Recording recording = new Recording()) {
+      for (String name : new String[] { "SkipList.Get", "SkipList.Set", "SkipList.Remove",
+          "SkipList.Iterate" }) {
+        recording.enable(name).withThreshold(Duration.ZERO);
+      }
+      recording.start();
+      ints.set(1, "one");
+      ints.get(1);
+      ints.containsKey(2);
+      ints.forEach((key, value) -> { });
+      ints.remove(1);
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+    assertTrue(events.size() + " events", events.size() == 5);
+    RecordedEvent set = events.get(0);
+    assertTrue("Set", set.getEventType().getName().equals("SkipList.Set"));
+    assertTrue("Set grew the list", set.getBoolean("heightChanged") && set.getInt("levels") == 0
+        && set.getInt("height") > 0 && set.getInt("size") == 1);
+    assertTrue("Get visited nodes", events.get(1).getLong("nodesVisited") > 0);
+    assertTrue("Iterate", events.get(3).getEventType().getName().equals("SkipList.Iterate"));
+    assertTrue("Remove emptied the list",
+        events.get(4).getBoolean("heightChanged") && events.get(4).getInt("height") == 0);
+
+    // fast operations stay under a large threshold
+    try (Recording recording = new Recording()) {
+      recording.enable("SkipList.Get").withThreshold(Duration.ofSeconds(10));
+      recording.start();
+      for (int i = 0; i < 1000; i++) {
+        ints.containsKey(i);
+      }
+      recording.stop();
+      recording.dump(file);
+    }
+    assertTrue("Nothing over the threshold", RecordingFile.readAllEvents(file).isEmpty());
+    Files.delete(file);
+  }
+
+  // +-----------------+-----------------------------------------------------
+  // | Node pool tests |
+  // +-----------------+
+
+  // make sure set reuses the nodes remove gives back, and that the list stays correct
+  @Test
+  public void testNodePool() {
+    setup();
+    ints.setNodePool(4);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 10000; i++) {
+      int num = random.nextInt(200);
+      if (random.nextBoolean()) {
+        set(num);
+        expected.put(num, value(num));
+      } else {
+        remove(num);
+        expected.remove(num);
+      }
+    }
+    assertTrue("Nodes were reused", ints.pool.reused > 0);
+    checkEntries(ints, expected);
+    for (int h = 0; h < ints.pool.counts.length; h++) {
+      assertTrue("Bounded", ints.pool.counts[h] <= 4);
+      for (int j = 0; j < ints.pool.counts[h]; j++) {
+        SLNode<Integer, String> node = ints.pool.free[h][j];
+        assertTrue("Cleared", node.key == null && node.value == null && node.prev == null
+            && node.next[0] == null);
+      }
+    }
+    assertTrue("Size", ints.size() == expected.size());
+  }
+
+  // remove through a descending iterator in deterministic mode with a pool, where remove swaps
+  // entries between nodes and recycles them, and make sure the iterator sees every key once
+  @Test
+  public void testNodePoolDescendingRemove() {
+    setup();
+    ints.setDeterministic(true);
+    ints.setNodePool(4);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 1000; i++) {
+      set(i);
+      expected.put(i, value(i));
+    }
+    for (int i = 0; i < 1000; i += 7) {
+      remove(i);
+      expected.remove(i);
+    }
+    Iterator<Integer> it = ints.descendingKeys();
+    Iterator<Integer> keys = expected.descendingKeySet().iterator();
+    while (it.hasNext()) {
+      Integer key = it.next();
+      assertTrue("Descending key " + key, key != null && key.equals(keys.next()));
+      if (key % 3 == 0) {
+        it.remove();
+        keys.remove();
+      }
+    }
+    assertTrue("Saw every key", !keys.hasNext());
+    checkEntries(ints, expected);
+    checkHeight(ints);
+    set(1000);
+    checkGaps(ints);
+  }
+
+  // +---------------------+-------------------------------------------------
+  // | Range removal tests |
+  // +---------------------+
+
+  // remove ranges, heads and tails, and make sure both the list and the removed entries are right
+  @Test
+  public void testRemoveRange() throws Exception {
+    setup();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 2000; i++) {
+      int num = random.nextInt(4000);
+      set(num);
+      expected.put(num, value(num));
+    }
+    SecondaryIndex<Integer, String, Integer> lengths =
+        ints.addIndex((value) -> value.length(), (i, j) -> i - j);
+    ChangeSubscription<Integer, String> changes = ints.subscribe(100000);
+    int removes = 0;
+    for (int round = 0; round < 30; round++) {
+      int from = random.nextInt(4200) - 100;
+      int to = from + random.nextInt(300);
+      SkipList<Integer, String> removed;
+      TreeMap<Integer, String> gone;
+      if (round % 3 == 0) {
+        removed = ints.removeRange(from, to);
+        gone = new TreeMap<Integer, String>(expected.subMap(from, to));
+      } else if (round % 3 == 1) {
+        removed = ints.removeHead(from / 20);
+        gone = new TreeMap<Integer, String>(expected.headMap(from / 20));
+      } else {
+        removed = ints.removeTail(4000 - from / 20);
+        gone = new TreeMap<Integer, String>(expected.tailMap(4000 - from / 20));
+      }
+      expected.keySet().removeAll(gone.keySet());
+      removes += gone.size();
+      assertTrue("Size", ints.size() == expected.size() && removed.size() == gone.size());
+      checkHeight(ints);
+      checkHeight(removed);
+      checkEntries(ints, expected);
+      checkEntries(removed, gone);
+      if (!expected.isEmpty()) {
+        assertTrue("Back pointers", ints.descendingKeys().next().equals(expected.lastKey()));
+      }
+    }
+    assertTrue("Index", lengths.size() == expected.size());
+    assertTrue("Subscribers", changes.poll(100000, 1, TimeUnit.SECONDS).size() == removes);
+    assertThrows(IllegalArgumentException.class, () -> ints.removeRange(5, 4));
+  }
+
+  // +--------------------+--------------------------------------------------
+  // | Hybrid mode tests |
+  // +--------------------+
+
+  // make sure the hash table follows every kind of change, in every mode it can be combined with
+  @Test
+  public void testHybrid() {
+    setup();
+    ints.setHybrid(true);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 20000; i++) {
+      if (i == 5000) {
+        ints.setTombstoneRatio(0.3);
+      } else if (i == 10000) {
+        ints.setTombstoneRatio(0);
+        ints.setDeterministic(true);
+      } else if (i == 15000) {
+        ints.setDeterministic(false);
+        ints.concat(ints.split(500));
+        ints.removeRange(100, 200);
+        expected.keySet().removeAll(new ArrayList<Integer>(expected.subMap(100, 200).keySet()));
+      }
+      int num = random.nextInt(1000);
+      if (random.nextBoolean()) {
+        set(num);
+        expected.put(num, value(num));
+      } else {
+        remove(num);
+        expected.remove(num);
+      }
+    }
+    checkEntries(ints, expected);
+    checkHeight(ints);
+    assertTrue("Table size", ints.hash.size == ints.size() + ints.tombstones);
+    for (int i = 0; i < 1000; i++) {
+      SLNode<Integer, String> node = ints.hash.get(i);
+      assertTrue("Table entry for " + i,
+          (node != null && node.key == i) == expected.containsKey(i));
+    }
+    if (!expected.isEmpty()) {
+      assertTrue("Back pointers", ints.descendingKeys().next().equals(expected.lastKey()));
+    }
+    assertThrows(IllegalStateException.class, () -> ints.setAdaptive(true));
+  }
+
+  // +-------------+---------------------------------------------------------
+  // | Arena tests |
+  // +-------------+
+
+  // make sure the arena list agrees with a TreeMap, and that remove's slots get reused
+  @Test
+  public void testArena() {
+    ArenaSkipList<Integer, String> arena = new ArenaSkipList<Integer, String>((i, j) -> i - j);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 20000; i++) {
+      int num = random.nextInt(500);
+      if (random.nextBoolean()) {
+        assertTrue("set " + num,
+            Objects.equals(arena.set(num, value(num)), expected.put(num, value(num))));
+      } else {
+        assertTrue("remove " + num, Objects.equals(arena.remove(num), expected.remove(num)));
+      }
+    }
+    assertTrue("Size", arena.size() == expected.size());
+    Iterator<Integer> keys = arena.keys();
+    Iterator<String> values = arena.values();
+    for (Integer key : expected.keySet()) {
+      assertTrue("Key " + key, keys.hasNext() && keys.next().equals(key));
+      assertTrue("Value of " + key, values.next().equals(value(key)) && arena.containsKey(key));
+    }
+    assertFalse("No more keys", keys.hasNext());
+    assertTrue("Slots reused", arena.slots < 1000);
+    assertThrows(IndexOutOfBoundsException.class, () -> arena.get(1000));
+  }
+
+  // +-----------------------+-----------------------------------------------
+  // | Long-keyed list tests |
+  // +-----------------------+
+
+  // make sure the blocked long list agrees with a TreeMap, with either search inside blocks
+  @Test
+  public void testLongSkipList() {
+    for (LongKeySearch search : new LongKeySearch[] { LongSkipList.SEARCH, LongKeySearch.BINARY }) {
+      LongSkipList<String> longs = new LongSkipList<String>(search);
+      TreeMap<Long, String> expected = new TreeMap<Long, String>();
+      for (int i = 0; i < 30000; i++) {
+        long num = random.nextInt(3000) - 1500;
+        if (i % 1000 == 0) {
+          num = (i % 2000 == 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        if (random.nextInt(3) > 0) {
+          assertTrue("set " + num,
+              Objects.equals(longs.set(num, "v" + num), expected.put(num, "v" + num)));
+        } else {
+          assertTrue("remove " + num, Objects.equals(longs.remove(num), expected.remove(num)));
+        }
+      }
+      assertTrue("Size", longs.size() == expected.size());
+      Iterator<Long> keys = longs.keys();
+      for (Long key : expected.keySet()) {
+        assertTrue("Key " + key, keys.hasNext() && keys.next().equals(key));
+        assertTrue("Value of " + key, longs.get(key.longValue()).equals("v" + key));
+      }
+      assertFalse("No more keys", keys.hasNext());
+      assertFalse("Absent key", longs.containsKey(1600L));
+    }
+
+    // the default search (vector, when available) counts the same as binary search
+    long[] block = new long[LongSkipList.BLOCK];
+    for (int trial = 0; trial < 1000; trial++) {
+      int count = random.nextInt(LongSkipList.BLOCK + 1);
+      Arrays.fill(block, Long.MAX_VALUE);
+      for (int i = 0; i < count; i++) {
+        block[i] = random.nextInt(100);
+      }
+      Arrays.sort(block, 0, count);
+      long key = random.nextInt(110) - 5;
+      assertTrue("countLess", LongSkipList.SEARCH.countLess(block, count, key)
+          == LongKeySearch.BINARY.countLess(block, count, key));
+    }
+  }
+
   // +---------------------+-------------------------------------------------
   // | some helper methods |
   // +---------------------+
 
+  // a 5000-byte value that depends on key and version
+  private ByteBuffer blob(int key, int version) {
+    ByteBuffer result = ByteBuffer.allocate(5000);
+    while (result.hasRemaining()) {
+      result.put((byte) (key * 31 + version + result.position()));
+    }
+    return result.flip();
+  }
+
+  // ensure that, between neighbours at each level, there are one to three nodes of that height
+  private <K, V> void checkGaps(SkipList<K, V> skipList) {
+    for (int level = 1; level <= skipList.height; level++) {
+      int gap = 0;
+      for (SLNode<K, V> node = skipList.dummy.next[level - 1]; node != null;
+          node = node.next[level - 1]) {
+        if (node.getHeight() > level) {
+          assertTrue("Gap of " + gap + " at level " + level, gap >= 1 && gap <= 3);
+          gap = 0;
+        } else {
+          gap++;
+        }
+      }
+      assertTrue("Last gap of " + gap + " at level " + level, gap >= 1 && gap <= 3);
+    }
+  }
+
   // ensure that the height of the list matches the height of the highest node
   private <K, V> void checkHeight(SkipList<K, V> skipList) {
     assertTrue("Checking height of skiplist", highestHeight(skipList) == skipList.height);
   }
 
+  // ensure that a list holds exactly the entries of expected, in order
+  private void checkEntries(SkipList<Integer, String> skipList,
+      TreeMap<Integer, String> expected) {
+    Iterator<Integer> keys = skipList.keys();
+    for (Integer key : expected.keySet()) {
+      assertTrue("Has " + key, keys.hasNext() && keys.next().equals(key));
+      assertTrue("Value of " + key, skipList.get(key).equals(expected.get(key)));
+    }
+    assertFalse("No more keys", keys.hasNext());
+  }
+
   // Find the highest node height in the list
   private <K, V> int highestHeight(SkipList<K, V> skipList) {
     Iterator<SLNode<K, V>> it = skipList.nodes();
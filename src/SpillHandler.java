@@ -0,0 +1,11 @@
+/**
+ * Something that can make room in a skip list that has reached its memory budget, e.g., by
+ * removing some entries and writing them somewhere else.
+ */
+public interface SpillHandler<K, V> {
+  /**
+   * Free up at least bytesNeeded bytes in list (as measured by list.estimatedBytes()). It is fine
+   * to free less; the write that triggered the spill is then rejected.
+   */
+  public void spill(SkipList<K, V> list, long bytesNeeded);
+} // SpillHandler<K, V>
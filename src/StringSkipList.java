@@ -0,0 +1,392 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list of String keys that stores its keys compactly, for keys that share long prefixes
+ * (URLs, paths, hierarchical ids). Keys are stored as UTF-8 bytes, and a node of height 1 only
+ * stores the part of its key that differs from the key of the node before it (front coding).
+ * Taller nodes, which are the ones the upper levels of a search compare against, store their
+ * whole key and act as restart points. To keep most nodes front-coded, nodes are promoted with
+ * probability 1/4 rather than 1/2.
+ * 
+ * Searches compare bytes and never rebuild a front-coded key: along the bottom level we track how
+ * many leading bytes the key we want shares with the current node, which is all we need to compare
+ * it with the next one.
+ * 
+ * Keys are ordered by their UTF-8 bytes (that is, by code point), which differs from
+ * String.compareTo only for characters outside the Basic Multilingual Plane.
+ */
+public class StringSkipList<V> implements SimpleMap<String, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The maximum height of a node.
+   */
+  static final int MAX_HEIGHT = 16;
+
+  /**
+   * The probability used to determine the height of nodes.
+   */
+  static final double PROB = 0.25;
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  static Random rand = new Random();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The node before the first node.
+   */
+  SSLNode<V> dummy = new SSLNode<V>(new byte[0], 0, null, MAX_HEIGHT);
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The height of the tallest node.
+   */
+  int height;
+
+  /**
+   * The predecessors found by the last call to find.
+   */
+  SSLNode<V>[] update = newNodeArray(MAX_HEIGHT);
+
+  /**
+   * The number of leading bytes the key passed to the last call to find shares with update[0].
+   */
+  int predLcp;
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(String key, V value) {
+    byte[] bytes = encode(key);
+    SSLNode<V> found = find(bytes);
+    if (found != null) {
+      V old = found.value;
+      found.value = value;
+      clearUpdate();
+      return old;
+    }
+
+    int h = randomHeight();
+    for (int i = this.height; i < h; i++) {
+      this.update[i] = this.dummy;
+    } // for
+    this.height = Math.max(this.height, h);
+
+    // restart points keep their whole key; other nodes only what differs from their predecessor
+    SSLNode<V> newNode;
+    if (h > 1) {
+      newNode = new SSLNode<V>(bytes, 0, value, h);
+    } else {
+      newNode = new SSLNode<V>(Arrays.copyOfRange(bytes, this.predLcp, bytes.length),
+          this.predLcp, value, h);
+    } // if/else
+
+    // the following node is now coded against the new node
+    SSLNode<V> following = this.update[0].next[0];
+    if (following != null && following.next.length == 1 && following.shared == this.predLcp) {
+      int m = mismatch(following.bytes, bytes, this.predLcp);
+      following.shared += m;
+      following.bytes = Arrays.copyOfRange(following.bytes, m, following.bytes.length);
+    } // if
+
+    for (int i = 0; i < h; i++) {
+      newNode.next[i] = this.update[i].next[i];
+      this.update[i].next[i] = newNode;
+    } // for
+    this.size++;
+    clearUpdate();
+    return null;
+  } // set(String, V)
+
+  @Override
+  public V get(String key) {
+    SSLNode<V> found = find(encode(key));
+    clearUpdate();
+    if (found == null) {
+      throw new IndexOutOfBoundsException("The key was not found.");
+    }
+    return found.value;
+  } // get(String)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(String key) {
+    if (key == null) {
+      return false;
+    }
+    SSLNode<V> found = find(encode(key));
+    clearUpdate();
+    return found != null;
+  } // containsKey(String)
+
+  @Override
+  public V remove(String key) {
+    byte[] bytes = encode(key);
+    SSLNode<V> found = find(bytes);
+    if (found == null) {
+      clearUpdate();
+      return null;
+    }
+
+    // the following node must now be coded against our predecessor
+    SSLNode<V> following = found.next[0];
+    if (following != null && following.next.length == 1 && this.predLcp < following.shared) {
+      byte[] rebuilt = new byte[following.shared - this.predLcp + following.bytes.length];
+      System.arraycopy(bytes, this.predLcp, rebuilt, 0, following.shared - this.predLcp);
+      System.arraycopy(following.bytes, 0, rebuilt, following.shared - this.predLcp,
+          following.bytes.length);
+      following.bytes = rebuilt;
+      following.shared = this.predLcp;
+    } // if
+
+    for (int i = 0; i < found.next.length; i++) {
+      this.update[i].next[i] = found.next[i];
+    } // for
+    while (this.height > 0 && this.dummy.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size--;
+    clearUpdate();
+    return found.value;
+  } // remove(String)
+
+  @Override
+  public Iterator<String> keys() {
+    return new Iterator<String>() {
+      SSLNode<V> next = StringSkipList.this.dummy.next[0];
+      byte[] buffer = new byte[64];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public String next() {
+        if (this.next == null) {
+          throw new IllegalStateException();
+        }
+        this.buffer = decode(this.next, this.buffer);
+        int length = this.next.shared + this.next.bytes.length;
+        this.next = this.next.next[0];
+        return new String(this.buffer, 0, length, StandardCharsets.UTF_8);
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      SSLNode<V> next = StringSkipList.this.dummy.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == null) {
+          throw new IllegalStateException();
+        }
+        V value = this.next.value;
+        this.next = this.next.next[0];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super V> action) {
+    byte[] buffer = new byte[64];
+    for (SSLNode<V> node = this.dummy.next[0]; node != null; node = node.next[0]) {
+      buffer = decode(node, buffer);
+      int length = node.shared + node.bytes.length;
+      action.accept(new String(buffer, 0, length, StandardCharsets.UTF_8), node.value);
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the node with the given key (or null), filling in update and predLcp.
+   */
+  SSLNode<V> find(byte[] key) {
+    // the upper levels only hold restart points, which have their whole key
+    SSLNode<V> temp = this.dummy;
+    for (int level = this.height - 1; level >= 1; level--) {
+      SSLNode<V> next;
+      while ((next = temp.next[level]) != null && Arrays.compareUnsigned(next.bytes, key) < 0) {
+        temp = next;
+      } // while
+      this.update[level] = temp;
+    } // for
+
+    // along the bottom, lcp is the number of leading bytes key shares with temp
+    int lcp = (temp == this.dummy) ? 0 : mismatch(temp.bytes, key, 0);
+    SSLNode<V> found = null;
+    SSLNode<V> next;
+    while ((next = temp.next[0]) != null) {
+      if (next.next.length > 1) {
+        // a restart point here is the one that stopped us on level 1, so it's not before key
+        if (Arrays.equals(next.bytes, key)) {
+          found = next;
+        }
+        break;
+      } else if (next.shared > lcp) {
+        // next agrees with temp past the point where temp and key differ, so it's before key too
+        temp = next;
+      } else if (next.shared < lcp) {
+        // next differs from temp where temp still agrees with key, so it's after key
+        break;
+      } else {
+        // compare the rest of next with the rest of key
+        int m = mismatch(next.bytes, key, lcp);
+        if (m == next.bytes.length && lcp + m == key.length) {
+          found = next;
+          break;
+        } else if (m == next.bytes.length
+            || (lcp + m < key.length && (next.bytes[m] & 0xFF) < (key[lcp + m] & 0xFF))) {
+          lcp += m;
+          temp = next;
+        } else {
+          break;
+        } // if/else
+      } // if/else
+    } // while
+    this.update[0] = temp;
+    this.predLcp = lcp;
+    return found;
+  } // find(byte[])
+
+  /**
+   * Drop the references in update, so that they don't keep removed nodes alive.
+   */
+  void clearUpdate() {
+    Arrays.fill(this.update, 0, Math.max(this.height, 1), null);
+  } // clearUpdate()
+
+  /**
+   * Rebuild the key of node into buffer, which must hold the key of the node before it (growing
+   * the buffer if needed).
+   */
+  static <V> byte[] decode(SSLNode<V> node, byte[] buffer) {
+    int length = node.shared + node.bytes.length;
+    if (length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(length, 2 * buffer.length));
+    } // if
+    System.arraycopy(node.bytes, 0, buffer, node.shared, node.bytes.length);
+    return buffer;
+  } // decode(SSLNode<V>, byte[])
+
+  /**
+   * Count the leading bytes of bytes that match key from position offset on.
+   */
+  static int mismatch(byte[] bytes, byte[] key, int offset) {
+    int m = Arrays.mismatch(bytes, 0, bytes.length, key, offset, key.length);
+    return (m < 0) ? bytes.length : m;
+  } // mismatch(byte[], byte[], int)
+
+  /**
+   * Get the UTF-8 bytes of a key.
+   * 
+   * @throws NullPointerException if the key is null.
+   */
+  static byte[] encode(String key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    }
+    return key.getBytes(StandardCharsets.UTF_8);
+  } // encode(String)
+
+  /**
+   * Pick a random height for a new node.
+   */
+  static int randomHeight() {
+    int result = 1;
+    while (result < MAX_HEIGHT && rand.nextDouble() < PROB) {
+      result++;
+    } // while
+    return result;
+  } // randomHeight()
+
+  /**
+   * Make an array of n node references.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> SSLNode<V>[] newNodeArray(int n) {
+    return (SSLNode<V>[]) new SSLNode<?>[n];
+  } // newNodeArray(int)
+
+} // class StringSkipList<V>
+
+
+/**
+ * Nodes in a StringSkipList.
+ */
+class SSLNode<V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The bytes of the key after the first shared ones.
+   */
+  byte[] bytes;
+
+  /**
+   * The number of leading bytes of the key that are the same as in the key of the previous node
+   * (always 0 for nodes taller than 1, which store their whole key).
+   */
+  int shared;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes.
+   */
+  SSLNode<V>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n.
+   */
+  public SSLNode(byte[] bytes, int shared, V value, int n) {
+    this.bytes = bytes;
+    this.shared = shared;
+    this.value = value;
+    this.next = StringSkipList.newNodeArray(n);
+  } // SSLNode(byte[], int, V, int)
+} // SSLNode<V>
@@ -0,0 +1,73 @@
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Compare memory per entry and get latency of StringSkipList and SkipList<String, V> on keys
+// with long shared prefixes.
+public class StringSkipListBenchmark {
+  static PrintWriter pen = new PrintWriter(System.out, true);
+
+  /*
+   * The number of keys in each list.
+   */
+  static final int SIZE = 300000;
+
+  /*
+   * The number of lookups we time (after the same number to warm up).
+   */
+  static final int LOOKUPS = 1000000;
+
+  static Random random = new Random(42);
+
+  public static void main(String[] args) {
+    String[] keys = new String[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      keys[i] = "https://www.example.com/catalog/category-" + random.nextInt(40) + "/item-"
+          + random.nextInt(10000000);
+    }
+
+    long before = usedMemory();
+    SkipList<String, Integer> plain = new SkipList<String, Integer>((s, t) -> s.compareTo(t));
+    for (int i = 0; i < SIZE; i++) {
+      // copy the key, so that the list pays for its own strings
+      plain.set(new String(keys[i].toCharArray()), 1);
+    }
+    long plainBytes = usedMemory() - before;
+    pen.println("SkipList<String, V>: " + plainBytes / plain.size() + " bytes/entry, "
+        + time(plain, keys) + " ns/get");
+    plain = null;
+
+    before = usedMemory();
+    StringSkipList<Integer> compressed = new StringSkipList<Integer>();
+    for (int i = 0; i < SIZE; i++) {
+      compressed.set(keys[i], 1);
+    }
+    long compressedBytes = usedMemory() - before;
+    pen.println("StringSkipList: " + compressedBytes / compressed.size() + " bytes/entry, "
+        + time(compressed, keys) + " ns/get");
+  }
+
+  /*
+   * the average nanoseconds for a get
+   */
+  static long time(SimpleMap<String, Integer> map, String[] keys) {
+    for (int i = 0; i < LOOKUPS; i++) {
+      map.get(keys[random.nextInt(keys.length)]);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      map.get(keys[random.nextInt(keys.length)]);
+    }
+    return (System.nanoTime() - start) / LOOKUPS;
+  }
+
+  /*
+   * the bytes in use on the heap, after collecting garbage
+   */
+  static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,178 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of values in a memory-mapped file. Each record is the length of the value
+ * (as an int) followed by its bytes, and is named by the offset where it starts. The log never
+ * changes a record once written, except in compact, which copies the records that are still
+ * wanted into a fresh file.
+ * 
+ * Since the whole file is mapped at once, a log holds at most 2 GB.
+ */
+public class ValueLog implements Closeable {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file that holds the log.
+   */
+  Path file;
+
+  /**
+   * The open file.
+   */
+  FileChannel channel;
+
+  /**
+   * The mapping of the file. Its capacity is the size of the file.
+   */
+  MappedByteBuffer buffer;
+
+  /**
+   * The offset at which the next record goes.
+   */
+  int end;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty log in file (replacing anything already there), with room for capacity bytes
+   * before it needs to grow.
+   */
+  public ValueLog(Path file, int capacity) {
+    this.file = file;
+    try {
+      this.channel = open(file);
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, 64));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // ValueLog(Path, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Append the remaining bytes of value to the log (without changing its position).
+   * 
+   * @return the offset of the new record.
+   */
+  public long append(ByteBuffer value) {
+    int length = value.remaining();
+    reserve(Integer.BYTES + length);
+    int offset = this.end;
+    this.buffer.putInt(offset, length);
+    this.buffer.put(offset + Integer.BYTES, value, value.position(), length);
+    this.end += Integer.BYTES + length;
+    return offset;
+  } // append(ByteBuffer)
+
+  /**
+   * Get the value in the record at offset, as a read-only view of the mapped file. The view stays
+   * valid until the next call to compact.
+   */
+  public ByteBuffer read(long offset) {
+    int start = (int) offset + Integer.BYTES;
+    return this.buffer.slice(start, this.buffer.getInt((int) offset)).asReadOnlyBuffer();
+  } // read(long)
+
+  /**
+   * Determine how many bytes the record at offset takes up in the log.
+   */
+  public int recordBytes(long offset) {
+    return Integer.BYTES + this.buffer.getInt((int) offset);
+  } // recordBytes(long)
+
+  /**
+   * Determine how many bytes of the log are in use.
+   */
+  public long size() {
+    return this.end;
+  } // size()
+
+  /**
+   * Copy the records at the given offsets into a new file that replaces this one, dropping every
+   * other record. Views returned by read before this call keep showing the old values.
+   * 
+   * @return the new offsets of the records, in the same order.
+   */
+  public long[] compact(long[] offsets) {
+    Path temp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+    int bytes = 0;
+    for (long offset : offsets) {
+      bytes += recordBytes(offset);
+    } // for
+    ValueLog fresh = new ValueLog(temp, Math.max(bytes, this.buffer.capacity() / 2));
+    long[] moved = new long[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      moved[i] = fresh.append(read(offsets[i]));
+    } // for
+    try {
+      this.channel.close();
+      Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+    this.channel = fresh.channel;
+    this.buffer = fresh.buffer;
+    this.end = fresh.end;
+    return moved;
+  } // compact(long[])
+
+  /**
+   * Close the file. The views returned by read stay readable until they are collected.
+   */
+  @Override
+  public void close() {
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make sure there is room for bytes more bytes, remapping a larger file if needed.
+   */
+  void reserve(int bytes) {
+    long needed = (long) this.end + bytes;
+    if (needed <= this.buffer.capacity()) {
+      return;
+    }
+    if (needed > Integer.MAX_VALUE) {
+      throw new IllegalStateException("value log is full");
+    }
+    long capacity = Math.min(Math.max(needed, 2L * this.buffer.capacity()), Integer.MAX_VALUE);
+    try {
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // reserve(int)
+
+  /**
+   * Open file for reading and writing, emptying it.
+   */
+  static FileChannel open(Path file) throws IOException {
+    return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  } // open(Path)
+
+} // class ValueLog
@@ -0,0 +1,209 @@
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * A SimpleMap for large values that keeps keys apart from values. The values live in a ValueLog,
+ * and the skip list only maps each key to the offset of its value in the log, so the list stays
+ * small no matter how big the values are. Values come back as read-only views of the log, without
+ * being copied.
+ * 
+ * Overwritten and removed values stay in the log as garbage until there is enough of it to be
+ * worth collecting, at which point the live values are copied into a fresh log. Views returned
+ * before a collection keep showing the values they showed before it.
+ */
+public class ValueLogMap<K> implements SimpleMap<K, ByteBuffer>, Closeable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The log capacity we start with.
+   */
+  static final int INITIAL_CAPACITY = 1 << 20;
+
+  /**
+   * Garbage below this many bytes is never worth collecting.
+   */
+  static final long MIN_GARBAGE = 1 << 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The offset of the value of each key.
+   */
+  SkipList<K, Long> index;
+
+  /**
+   * The values.
+   */
+  ValueLog log;
+
+  /**
+   * The number of bytes in the log that no key refers to.
+   */
+  long garbage;
+
+  /**
+   * The fraction of the log that may be garbage before we collect it.
+   */
+  double garbageRatio = 0.5;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new map whose values are stored in file.
+   */
+  public ValueLogMap(Comparator<K> comparator, Path file) {
+    this.index = new SkipList<K, Long>(comparator);
+    this.log = new ValueLog(file, INITIAL_CAPACITY);
+  } // ValueLogMap(Comparator<K>, Path)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Append the remaining bytes of value to the log and associate them with key.
+   * 
+   * @return a view of the previous value (or null, if there's no such value)
+   */
+  @Override
+  public ByteBuffer set(K key, ByteBuffer value) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    }
+    Long old = this.index.set(key, this.log.append(value));
+    return discard(old);
+  } // set(K, ByteBuffer)
+
+  @Override
+  public ByteBuffer get(K key) {
+    return this.log.read(this.index.get(key));
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.index.size();
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return this.index.containsKey(key);
+  } // containsKey(K)
+
+  @Override
+  public ByteBuffer remove(K key) {
+    return discard(this.index.remove(key));
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return this.index.keys();
+  } // keys()
+
+  @Override
+  public Iterator<ByteBuffer> values() {
+    Iterator<Long> offsets = this.index.values();
+    return new Iterator<ByteBuffer>() {
+      @Override
+      public boolean hasNext() {
+        return offsets.hasNext();
+      } // hasNext()
+
+      @Override
+      public ByteBuffer next() {
+        return ValueLogMap.this.log.read(offsets.next());
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super ByteBuffer> action) {
+    this.index.forEach((key, offset) -> action.accept(key, this.log.read(offset)));
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Set the fraction of the log that may be garbage before it is collected.
+   */
+  public void setGarbageRatio(double ratio) {
+    if (ratio <= 0 || ratio >= 1) {
+      throw new IllegalArgumentException("garbage ratio must be between 0 and 1");
+    }
+    this.garbageRatio = ratio;
+  } // setGarbageRatio(double)
+
+  /**
+   * Determine how many bytes of the log no key refers to.
+   */
+  public long garbage() {
+    return this.garbage;
+  } // garbage()
+
+  /**
+   * Determine how many bytes of the log are in use, garbage included.
+   */
+  public long logBytes() {
+    return this.log.size();
+  } // logBytes()
+
+  /**
+   * Copy the live values into a fresh log, dropping the garbage.
+   */
+  public void collect() {
+    ArrayList<K> keys = new ArrayList<K>(this.index.size());
+    long[] offsets = new long[this.index.size()];
+    this.index.forEach((key, offset) -> {
+      offsets[keys.size()] = offset;
+      keys.add(key);
+    });
+    long[] moved = this.log.compact(offsets);
+    for (int i = 0; i < moved.length; i++) {
+      this.index.set(keys.get(i), moved[i]);
+    } // for
+    this.garbage = 0;
+  } // collect()
+
+  /**
+   * Close the log.
+   */
+  @Override
+  public void close() {
+    this.log.close();
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Count the record at offset (if any) as garbage, collecting if there is too much.
+   * 
+   * @return a view of the record (or null, if offset is null).
+   */
+  ByteBuffer discard(Long offset) {
+    if (offset == null) {
+      return null;
+    }
+    ByteBuffer old = this.log.read(offset);
+    this.garbage += this.log.recordBytes(offset);
+    if (this.garbage >= MIN_GARBAGE && this.garbage > this.garbageRatio * this.log.size()) {
+      collect();
+    } // if
+    return old;
+  } // discard(Long)
+
+} // class ValueLogMap<K>
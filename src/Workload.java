@@ -0,0 +1,47 @@
+/**
+ * The YCSB core workloads: the share of reads, updates, inserts, scans and read-modify-writes,
+ * and the distribution of keys each one uses by default.
+ */
+enum Workload {
+  /** Update heavy: a session store recording recent actions. */
+  A(0.5, 0.5, 0, 0, 0, "zipfian"),
+  /** Read mostly: photo tagging. */
+  B(0.95, 0.05, 0, 0, 0, "zipfian"),
+  /** Read only: a user profile cache. */
+  C(1, 0, 0, 0, 0, "zipfian"),
+  /** Read latest: user status updates. */
+  D(0.95, 0, 0.05, 0, 0, "latest"),
+  /** Short ranges: threaded conversations. */
+  E(0, 0, 0.05, 0.95, 0, "zipfian"),
+  /** Read-modify-write: a user database. */
+  F(0.5, 0, 0, 0, 0.5, "zipfian");
+
+  /**
+   * The share of each kind of operation, in the order of LoadTest.OPERATIONS.
+   */
+  final double[] proportions;
+
+  /**
+   * The usual key distribution.
+   */
+  final String distribution;
+
+  Workload(double read, double update, double insert, double scan, double readModifyWrite,
+      String distribution) {
+    this.proportions = new double[] { read, update, insert, scan, readModifyWrite };
+    this.distribution = distribution;
+  } // Workload(double, double, double, double, double, String)
+
+  /**
+   * Pick a kind of operation, given a uniform random number in [0, 1).
+   */
+  int pick(double u) {
+    for (int op = 0; op < this.proportions.length; op++) {
+      u -= this.proportions[op];
+      if (u < 0) {
+        return op;
+      } // if
+    } // for
+    return 0;
+  } // pick(double)
+} // enum Workload
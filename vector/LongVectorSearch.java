@@ -0,0 +1,52 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The search LongSkipList uses inside a block when the Vector API is available: compare a whole
+ * vector of keys (4 longs with AVX2, 8 with AVX-512) with the key we want at once, and count the
+ * lanes that are less.
+ *
+ * This class lives in a source folder of its own, vector/, which the default build (the src
+ * folder) leaves out, so that the other sources still compile without the incubator module.
+ * To use it, compile it along with them and run with the module, e.g.
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -d out src/*.java vector/*.java
+ * java --add-modules jdk.incubator.vector -cp out LongSkipListBenchmark
+ * </pre>
+ *
+ * (In Eclipse, add vector as a second source folder and --add-modules jdk.incubator.vector to the
+ * compiler and launch settings.) LongSkipList finds it by name, and uses binary search when it
+ * isn't there.
+ */
+class LongVectorSearch implements LongKeySearch {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The widest vector of longs the hardware handles well.
+   */
+  static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  @Override
+  public int countLess(long[] keys, int count, long key) {
+    // the keys are sorted, so we can stop at the first vector that isn't entirely less
+    int lanes = SPECIES.length();
+    int less = 0;
+    for (int i = 0; i < count; i += lanes) {
+      int n = LongVector.fromArray(SPECIES, keys, i).compare(VectorOperators.LT, key).trueCount();
+      less += n;
+      if (n < lanes) {
+        break;
+      }
+    } // for
+    return less;
+  } // countLess(long[], int, long)
+} // class LongVectorSearch